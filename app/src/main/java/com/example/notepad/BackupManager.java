@@ -3,10 +3,14 @@ package com.example.notepad;
 import android.content.Context;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -27,11 +31,9 @@ public class BackupManager {
             String fileName = "notes_backup_" + sdf.format(new Date()) + ".dat";
             File backupFile = new File(backupDir, fileName);
             
-            FileOutputStream fos = new FileOutputStream(backupFile);
-            java.io.ObjectOutputStream oos = new java.io.ObjectOutputStream(fos);
-            oos.writeObject(notes);
-            oos.close();
-            fos.close();
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(backupFile));
+            NoteCodec.writeNotes(os, notes);
+            os.close();
             
             Log.d(TAG, "Backup created: " + backupFile.getAbsolutePath());
             return true;
@@ -51,11 +53,19 @@ public class BackupManager {
                 return null;
             }
             
-            FileInputStream fis = new FileInputStream(backupFile);
-            java.io.ObjectInputStream ois = new java.io.ObjectInputStream(fis);
-            List<Note> notes = (List<Note>) ois.readObject();
-            ois.close();
-            fis.close();
+            InputStream is = new BufferedInputStream(new FileInputStream(backupFile));
+            List<Note> notes;
+            if (NoteCodec.hasMagic(is, NoteCodec.NOTES_MAGIC)) {
+                notes = NoteCodec.readNotes(is);
+            } else {
+                // 旧版备份使用 Java 序列化
+                java.io.ObjectInputStream ois = new java.io.ObjectInputStream(is);
+                notes = (List<Note>) ois.readObject();
+                for (Note note : notes) {
+                    note.ensureId();
+                }
+            }
+            is.close();
             
             Log.d(TAG, "Backup restored: " + backupFileName);
             return notes;
@@ -0,0 +1,55 @@
+package com.example.notepad;
+
+import java.nio.ByteBuffer;
+
+// CRC32C（Castagnoli）校验，用于段文件和日志的逐条记录校验
+// java.util.zip.CRC32C 需要 API 26，minSdk 24 上只能用查表实现
+public final class Crc32c {
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private Crc32c() {
+    }
+
+    public static int compute(byte[] data) {
+        return compute(data, 0, data.length);
+    }
+
+    public static int compute(byte[] data, int offset, int length) {
+        return finish(update(~0, data, offset, length));
+    }
+
+    // 直接在（映射的）缓冲区上计算，不拷贝数据；不改变 buffer 的 position
+    public static int compute(ByteBuffer buffer, int offset, int length) {
+        int crc = ~0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ buffer.get(i)) & 0xFF];
+        }
+        return finish(crc);
+    }
+
+    // 分段计算：start() 开始，多次 update()，最后 finish()
+    public static int start() {
+        return ~0;
+    }
+
+    public static int update(int crc, byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    public static int finish(int crc) {
+        return ~crc;
+    }
+}
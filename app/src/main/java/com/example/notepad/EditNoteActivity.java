@@ -5,8 +5,6 @@ import android.app.DatePickerDialog;
 import android.app.TimePickerDialog;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.MediaPlayer;
 import android.media.MediaRecorder;
 import android.net.Uri;
@@ -62,8 +60,9 @@ public class EditNoteActivity extends AppCompatActivity {
     private RadioGroup priorityRadioGroup;
     private MaterialButton btnSetReminder;
     private TextView tvReminderTime;
+    private NoteRepository noteRepository;
     private Note currentNote;
-    private int position = -1;
+    private boolean isExistingNote = false;
     private List<String> categories;
     private Date reminderDate;
     private SimpleDateFormat dateTimeFormat;
@@ -232,9 +231,13 @@ public class EditNoteActivity extends AppCompatActivity {
 
     private void loadNoteData() {
         Intent intent = getIntent();
-        if (intent.hasExtra("note")) {
-            currentNote = (Note) intent.getSerializableExtra("note");
-            position = intent.getIntExtra("position", -1);
+        noteRepository = NoteRepositories.get(this);
+        // 只传ID，笔记从仓库中读取
+        if (intent.hasExtra("note_id")) {
+            currentNote = noteRepository.getNote(intent.getLongExtra("note_id", 0));
+        }
+        if (currentNote != null) {
+            isExistingNote = true;
             etNoteTitle.setText(currentNote.getTitle());
             etNoteContent.setText(currentNote.getContent());
             categoryAutoComplete.setText(currentNote.getCategory());
@@ -399,11 +402,13 @@ public class EditNoteActivity extends AppCompatActivity {
             currentNote.setReminderDate(null);
         }
 
-        Intent resultIntent = new Intent();
-        resultIntent.putExtra("note", currentNote);
-        if (position != -1) {
-            resultIntent.putExtra("position", position);
+        // 编辑期间笔记已被删除时不再写回
+        if (!isExistingNote || noteRepository.contains(currentNote.getId())) {
+            noteRepository.save(currentNote);
         }
+
+        Intent resultIntent = new Intent();
+        resultIntent.putExtra("note_id", currentNote.getId());
         setResult(RESULT_OK, resultIntent);
         finish();
     }
@@ -480,15 +485,18 @@ public class EditNoteActivity extends AppCompatActivity {
         }
     }
     
+    // 按屏幕宽度降采样，在后台解码，不在主线程读取原图；只经过磁盘缓存，不占列表缩略图的内存缓存
     private void loadImagePreview(String imagePath) {
-        Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-        if (bitmap != null) {
-            ivImagePreview.setImageBitmap(bitmap);
-            cardImagePreview.setVisibility(View.VISIBLE);
+        if (!new File(imagePath).exists()) {
+            return;
         }
+        NoteThumbnails.get(this).loadPreview(ivImagePreview, imagePath,
+                getResources().getDisplayMetrics().widthPixels);
+        cardImagePreview.setVisibility(View.VISIBLE);
     }
     
     private void removeImage() {
+        NoteThumbnails.get(this).cancel(ivImagePreview);
         currentImagePath = null;
         cardImagePreview.setVisibility(View.GONE);
     }
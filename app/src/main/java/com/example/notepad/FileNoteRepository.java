@@ -0,0 +1,451 @@
+package com.example.notepad;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// 文件存储后端：全部笔记常驻内存并按ID索引，查找、修改、删除都是 O(1)
+// 内存中的数据立即生效，磁盘写入交给 NoteWriter 在后台合并执行
+public class FileNoteRepository implements NoteRepository {
+    // 候选数不到总数的 1/8 时直接排序候选，比遍历整个有序视图快
+    private static final int SORT_CANDIDATES_RATIO = 8;
+
+    private final NoteWriter writer;
+    // 既是ID索引，也保留笔记的原始顺序（更新已有笔记不改变位置）
+    private final LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+    // 与 notesById 同步维护；启动时复用快照旁的摘要，只有之后改过的笔记才需要读取正文
+    private final Map<Long, NoteSummary> summaries = new HashMap<>();
+    // 关键字搜索走倒排索引；同样从快照旁的索引文件加载，只重新索引之后改过的笔记
+    private final NoteSearchIndex searchIndex;
+    // 分类、优先级和各种标记的位图，只在内存中维护，启动时由元数据直接建立
+    private final NoteBitmapIndex bitmapIndex = new NoteBitmapIndex();
+    // 标题和分类的拼音前缀树；转写每个字都有缓存，启动时直接重建
+    private final NotePinyinIndex pinyinIndex = new NotePinyinIndex();
+    // 每种排序方式一个有序视图，元素是不可变的摘要（笔记对象本身会被界面直接修改，不能作为有序集合的键），
+    // 增删改都是 O(log n)，列表按视图顺序遍历即可，不必每次排序
+    private final List<TreeSet<NoteSummary>> sortedViews = new ArrayList<>();
+    private final NoteObservers observers = new NoteObservers();
+
+    public FileNoteRepository(Context context) {
+        this.writer = new NoteWriter(context);
+        for (int mode = SORT_BY_TIME; mode <= SORT_BY_PRIORITY; mode++) {
+            sortedViews.add(new TreeSet<>(NoteRepository.summaryComparator(mode)));
+        }
+        Map<Long, NoteSummary> stored = NoteStorage.loadSummaries(context);
+        this.searchIndex = NoteStorage.loadSearchIndex(context);
+        for (Note note : NoteStorage.loadNotes(context)) {
+            notesById.put(note.getId(), note);
+            putSummary(NoteSummary.of(note, stored.get(note.getId())));
+            bitmapIndex.put(note);
+            pinyinIndex.put(note);
+            if (!searchIndex.isCurrent(note)) {
+                searchIndex.add(note);
+            }
+        }
+        searchIndex.retainAll(notesById.keySet());
+    }
+
+    @Override
+    public synchronized Note getNote(long id) {
+        Note note = notesById.get(id);
+        return note != null ? note.copy() : null;
+    }
+
+    @Override
+    public synchronized boolean contains(long id) {
+        return notesById.containsKey(id);
+    }
+
+    @Override
+    public synchronized List<Note> getAll() {
+        // 与 getNote 一样返回副本；副本共享正文的延迟加载器，不会因此解码正文
+        List<Note> notes = new ArrayList<>(notesById.size());
+        for (Note note : notesById.values()) {
+            notes.add(note.copy());
+        }
+        return notes;
+    }
+
+    @Override
+    public synchronized int size() {
+        return notesById.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return notesById.isEmpty();
+    }
+
+    @Override
+    public synchronized List<NoteSummary> getSummaries() {
+        List<NoteSummary> result = new ArrayList<>(notesById.size());
+        for (Long id : notesById.keySet()) {
+            result.add(summaries.get(id));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode) {
+        return select(category, todoOnly, text, sortMode, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode,
+                                                         NoteSummary after, int limit) {
+        return select(category, todoOnly, text, sortMode, after, limit);
+    }
+
+    // 查询计划：分类、待办、优先级和标记条件由位图求交，关键字查倒排索引，剩下的条件逐条检查；调用方持有锁
+    // 候选很少时直接排序候选；否则按有序视图遍历，凑够 limit 条就停止
+    // 按时间排序且有 before: 条件时，从有序视图中 before 的位置开始遍历，越过 after 就停止
+    // 按相关度排序时没有现成的顺序，总是取出全部候选按 BM25 得分排序
+    // 键集分页（from 不为 null）时，排序候选前先去掉不在 from 之后的，遍历有序视图则从 from 之后开始
+    private List<NoteSummary> select(String category, boolean todoOnly, String text, int sortMode,
+                                     NoteSummary from, int limit) {
+        Plan plan = plan(category, todoOnly, text);
+        int candidates = plan.matches != null
+                ? Math.min(plan.matches.length, plan.selected.cardinality()) : plan.selected.cardinality();
+        boolean byRelevance = sortMode == SORT_BY_RELEVANCE && !plan.rankingText.isEmpty();
+        Comparator<NoteSummary> comparator = byRelevance
+                ? NoteRepository.relevanceComparator(searchIndex.relevance(plan.rankingText))
+                : NoteRepository.summaryComparator(sortMode);
+        List<NoteSummary> result = new ArrayList<>();
+
+        if (byRelevance || candidates * SORT_CANDIDATES_RATIO < notesById.size()) {
+            if (plan.matches != null && plan.matches.length < plan.selected.cardinality()) {
+                for (long id : plan.matches) {
+                    if (bitmapIndex.contains(plan.selected, id) && plan.accepts(notesById.get(id))) {
+                        result.add(summaries.get(id));
+                    }
+                }
+            } else {
+                for (int slot = plan.selected.nextSetBit(0); slot >= 0; slot = plan.selected.nextSetBit(slot + 1)) {
+                    long id = bitmapIndex.idAt(slot);
+                    if (plan.accepts(notesById.get(id))) {
+                        result.add(summaries.get(id));
+                    }
+                }
+            }
+            if (from != null) {
+                List<NoteSummary> following = new ArrayList<>(result.size());
+                for (NoteSummary summary : result) {
+                    if (comparator.compare(summary, from) > 0) {
+                        following.add(summary);
+                    }
+                }
+                result = following;
+            }
+            Collections.sort(result, comparator);
+            return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+        }
+
+        TreeSet<NoteSummary> sorted = sortedViews.get(viewIndex(sortMode));
+        Iterable<NoteSummary> view = sorted;
+        boolean byTime = viewIndex(sortMode) == SORT_BY_TIME;
+        NoteSummary start = null;
+        if (byTime && plan.before != Long.MAX_VALUE) {
+            start = new NoteSummary(Long.MIN_VALUE, null, null, new Date(0),
+                    new Date(plan.before - 1), null, 0, 0, null);
+        }
+        // 两个起点取靠后的一个
+        if (from != null && (start == null || sorted.comparator().compare(from, start) >= 0)) {
+            view = sorted.tailSet(from, false);
+        } else if (start != null) {
+            view = sorted.tailSet(start, true);
+        }
+        for (NoteSummary summary : view) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (byTime && summary.getModifiedDate().getTime() < plan.after) {
+                break;
+            }
+            long id = summary.getId();
+            if (!bitmapIndex.contains(plan.selected, id)) {
+                continue;
+            }
+            if (plan.accepts(notesById.get(id))) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    // 解析查询并把能用索引回答的条件先算出来
+    private Plan plan(String category, boolean todoOnly, String text) {
+        NoteQuery query = NoteQuery.parse(text);
+        Plan plan = new Plan();
+        plan.rankingText = TextUtils.join(" ", query.getPositiveTexts());
+        plan.selected = bitmapIndex.select(category, todoOnly);
+        plan.before = query.getBefore();
+        plan.after = query.getAfter();
+        for (NoteQuery.Predicate predicate : NoteQuery.byCost(query.getPredicates())) {
+            BitSet bits = bitmap(predicate);
+            if (bits != null) {
+                if (predicate.negated) {
+                    plan.selected.andNot(bits);
+                } else {
+                    plan.selected.and(bits);
+                }
+            } else if (predicate.field == NoteQuery.FIELD_TEXT && predicate.isIndexable()) {
+                // 不取反的关键字求交集，取反的关键字查出命中的笔记排除掉
+                long[] ids = textMatches(predicate);
+                if (predicate.negated) {
+                    plan.excluded.add(ids);
+                } else {
+                    plan.matches = plan.matches != null ? NoteSearchIndex.intersect(plan.matches, ids) : ids;
+                }
+            } else {
+                // 短语先用倒排索引缩小范围，再逐条核对原文
+                if (predicate.field == NoteQuery.FIELD_PHRASE && !predicate.negated && predicate.isIndexable()) {
+                    long[] ids = searchIndex.search(predicate.text);
+                    plan.matches = plan.matches != null ? NoteSearchIndex.intersect(plan.matches, ids) : ids;
+                }
+                plan.residual.add(predicate);
+            }
+        }
+        return plan;
+    }
+
+    // 倒排索引中的匹配；只有字母的关键字也可能是拼音或首字母（如 gzjh 匹配“工作计划”），合并拼音索引的结果
+    private long[] textMatches(NoteQuery.Predicate predicate) {
+        long[] ids = searchIndex.search(predicate.text);
+        if (ids == null) {
+            ids = new long[0];
+        }
+        if (NotePinyin.isPinyinQuery(predicate.text)) {
+            ids = NoteSearchIndex.union(ids, pinyinIndex.search(predicate.text));
+        }
+        return ids;
+    }
+
+    // 能由位图回答的条件返回对应的位图（新建的，可以直接修改），否则返回 null
+    private BitSet bitmap(NoteQuery.Predicate predicate) {
+        switch (predicate.field) {
+            case NoteQuery.FIELD_CATEGORY:
+                return bitmapIndex.inCategory(predicate.text);
+            case NoteQuery.FIELD_PRIORITY:
+                return bitmapIndex.withPriority((int) predicate.value);
+            case NoteQuery.FIELD_TODO:
+                BitSet todo = bitmapIndex.withFlag(NoteSummary.FLAG_TODO);
+                if (predicate.value == NoteQuery.TODO_OPEN) {
+                    todo.andNot(bitmapIndex.withFlag(NoteSummary.FLAG_COMPLETED));
+                } else if (predicate.value == NoteQuery.TODO_DONE) {
+                    todo.and(bitmapIndex.withFlag(NoteSummary.FLAG_COMPLETED));
+                }
+                return todo;
+            case NoteQuery.FIELD_HAS:
+                return predicate.value != NoteQuery.HAS_REMINDER
+                        ? bitmapIndex.withFlag((int) predicate.value) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static class Plan {
+        BitSet selected;
+        // 关键字在倒排索引中的交集（有序），null 表示没有可索引的关键字
+        long[] matches;
+        final List<long[]> excluded = new ArrayList<>();
+        // 需要逐条检查的条件，元数据条件在前
+        final List<NoteQuery.Predicate> residual = new ArrayList<>();
+        long before;
+        long after;
+        // 参与相关度打分的关键字
+        String rankingText;
+
+        boolean indexed(long id) {
+            if (matches != null && Arrays.binarySearch(matches, id) < 0) {
+                return false;
+            }
+            for (long[] ids : excluded) {
+                if (Arrays.binarySearch(ids, id) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean accepts(Note note) {
+            if (!indexed(note.getId())) {
+                return false;
+            }
+            for (NoteQuery.Predicate predicate : residual) {
+                if (!predicate.matches(note)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static int viewIndex(int sortMode) {
+        return sortMode >= SORT_BY_TIME && sortMode <= SORT_BY_PRIORITY ? sortMode : SORT_BY_TIME;
+    }
+
+    private void putSummary(NoteSummary summary) {
+        NoteSummary previous = summaries.put(summary.getId(), summary);
+        for (TreeSet<NoteSummary> view : sortedViews) {
+            if (previous != null) {
+                view.remove(previous);
+            }
+            view.add(summary);
+        }
+    }
+
+    private void removeSummary(long id) {
+        NoteSummary previous = summaries.remove(id);
+        if (previous != null) {
+            for (TreeSet<NoteSummary> view : sortedViews) {
+                view.remove(previous);
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<NoteSummary> narrowSummaries(List<NoteSummary> candidates, String text) {
+        Plan plan = plan(null, false, text);
+        List<NoteSummary> result = new ArrayList<>();
+        for (NoteSummary candidate : candidates) {
+            Note note = notesById.get(candidate.getId());
+            if (note != null && bitmapIndex.contains(plan.selected, note.getId()) && plan.accepts(note)) {
+                result.add(summaries.get(note.getId()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<NoteSummary> fuzzySummaries(List<String> alternatives, String category, boolean todoOnly) {
+        BitSet selected = bitmapIndex.select(category, todoOnly);
+        List<NoteSummary> result = new ArrayList<>();
+        for (long id : searchIndex.fuzzySearch(alternatives)) {
+            if (bitmapIndex.contains(selected, id)) {
+                result.add(summaries.get(id));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getCategoryCounts() {
+        return bitmapIndex.categoryCounts();
+    }
+
+    // 新增或按ID替换；观察者在释放锁之后回调
+    @Override
+    public void save(Note note) {
+        // 保存副本：调用方之后继续修改自己的实例时，不会与搜索线程和写线程的读取冲突
+        note = note.copy();
+        Note previous;
+        synchronized (this) {
+            previous = notesById.put(note.getId(), note);
+            putSummary(NoteSummary.of(note));
+            searchIndex.add(note);
+            bitmapIndex.put(note);
+            pinyinIndex.put(note);
+            writer.markDirty(note);
+        }
+        observers.notifySaved(note, previous != null ? previous.getCategory() : null);
+    }
+
+    @Override
+    public void delete(long id) {
+        Note removed;
+        synchronized (this) {
+            removed = notesById.remove(id);
+            if (removed == null) {
+                return;
+            }
+            removeSummary(id);
+            searchIndex.remove(id);
+            bitmapIndex.remove(id);
+            pinyinIndex.remove(id);
+            writer.markDeleted(id);
+        }
+        observers.notifyDeleted(removed);
+    }
+
+    @Override
+    public void replaceAll(List<Note> notes) {
+        // 与 save 一样保存副本，调用方之后修改自己的实例不影响仓库
+        List<Note> copies = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            copies.add(note.copy());
+        }
+        synchronized (this) {
+            // 从备份恢复时大多数笔记没有变化，沿用已有摘要的预览
+            Map<Long, NoteSummary> previous = new HashMap<>(summaries);
+            notesById.clear();
+            summaries.clear();
+            for (TreeSet<NoteSummary> view : sortedViews) {
+                view.clear();
+            }
+            bitmapIndex.clear();
+            for (Note note : copies) {
+                notesById.put(note.getId(), note);
+                putSummary(NoteSummary.of(note, previous.get(note.getId())));
+                bitmapIndex.put(note);
+                pinyinIndex.put(note);
+                if (!searchIndex.isCurrent(note)) {
+                    searchIndex.add(note);
+                }
+            }
+            searchIndex.retainAll(notesById.keySet());
+            // 没变的笔记保留原有的拼音词
+            pinyinIndex.retainAll(notesById.keySet());
+            writer.replaceAll(copies);
+        }
+        observers.notifyReplaced();
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    // 与笔记写入共用写线程，任务按提交顺序执行
+    @Override
+    public void execute(Runnable task) {
+        writer.execute(task);
+    }
+
+    // 笔记都在内存中，提交时取好快照（只复制引用），任务仍在写线程上按顺序执行
+    @Override
+    public void executeWithNotes(NotesTask task) {
+        final List<Note> snapshot = getAll();
+        writer.execute(() -> task.run(snapshot));
+    }
+
+    @Override
+    public void flushAsync() {
+        writer.flushAsync();
+    }
+
+    @Override
+    public void flush() {
+        writer.flush();
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.notepad;
 
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
@@ -26,29 +27,58 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
 
 public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNoteClickListener {
     private RecyclerView notesRecyclerView;
     private NotesAdapter notesAdapter;
-    private List<Note> notes;
-    private List<Note> allNotes;
+    private NoteRepository noteRepository;
+    private final NoteSearchExecutor searchExecutor = new NoteSearchExecutor();
+    private final NoteQueryCache queryCache = new NoteQueryCache();
+    private NotePager notesPager;
     private FloatingActionButton fabAddNote;
     private TextInputEditText searchEditText;
     private ChipGroup categoryChipGroup;
+    private Chip allCategoriesChip;
+    private final Map<String, Chip> categoryChips = new HashMap<>();
+    private final NoteCategoryFacets categoryFacets = new NoteCategoryFacets(this::updateCategoryChip);
     private Toolbar toolbar;
     private String selectedCategory = null;
-    private int sortMode = 0; // 0=时间, 1=标题, 2=分类, 3=优先级
+    private int sortMode = 0; // 0=时间, 1=标题, 2=分类, 3=优先级, 4=相关度
     private boolean showTodoOnly = false;
     private static final int REQUEST_CODE_ADD_NOTE = 1;
     private static final int REQUEST_CODE_EDIT_NOTE = 2;
     private static final int REQUEST_CODE_OCR = 3;
     private static final int REQUEST_CODE_STICKY_NOTE = 4;
+    
+    // 笔记在任何界面保存或删除后清空查询缓存、刷新列表和分类计数，并同步提醒
+    private final NoteRepository.Observer noteObserver = new NoteRepository.Observer() {
+        @Override
+        public void onNoteSaved(Note note, String previousCategory) {
+            queryCache.invalidate();
+            categoryFacets.onSaved(previousCategory, note.getCategory());
+            ReminderManager.setReminder(MainActivity.this, note);
+            refreshNotes();
+        }
+        
+        @Override
+        public void onNoteDeleted(Note note) {
+            queryCache.invalidate();
+            categoryFacets.onDeleted(note.getCategory());
+            ReminderManager.cancelReminder(MainActivity.this, note);
+            refreshNotes();
+        }
+        
+        @Override
+        public void onNotesReplaced() {
+            queryCache.invalidate();
+            loadCategoryCounts();
+            refreshNotes();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -65,10 +95,11 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
         setContentView(R.layout.activity_main);
 
         initViews();
-        initNotes();
         initRecyclerView();
         setListeners();
         updateToolbarTitle();
+        // 打开仓库要读取存储、建立索引，在后台完成后再显示笔记
+        NoteRepositories.getAsync(this, this::initNotes);
     }
     
     private void updateToolbarTitle() {
@@ -87,45 +118,87 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
         categoryChipGroup = findViewById(R.id.category_chip_group);
     }
 
-    private void initNotes() {
-        allNotes = NoteStorage.loadNotes(this);
-        notes = new ArrayList<>(allNotes);
-        // 如果没有保存的笔记，添加一些示例笔记
-        if (notes.isEmpty()) {
-            notes.add(new Note("示例笔记1", "这是第一条示例笔记的内容，你可以点击编辑或者长按删除。", "默认"));
-            notes.add(new Note("示例笔记2", "这是第二条示例笔记的内容，展示了如何在记事本应用中创建和管理笔记。", "工作"));
-            NoteStorage.saveNotes(this, notes);
-            allNotes = new ArrayList<>(notes);
+    private void initNotes(NoteRepository repository) {
+        if (isDestroyed()) {
+            return;
         }
+        noteRepository = repository;
+        noteRepository.addObserver(noteObserver);
+        // 如果没有保存的笔记，添加一些示例笔记；检查和写入都在写线程上，列表由 noteObserver 刷新
+        repository.execute(() -> {
+            if (repository.isEmpty()) {
+                List<Note> samples = new ArrayList<>();
+                samples.add(new Note("示例笔记1", "这是第一条示例笔记的内容，你可以点击编辑或者长按删除。", "默认"));
+                samples.add(new Note("示例笔记2", "这是第二条示例笔记的内容，展示了如何在记事本应用中创建和管理笔记。", "工作"));
+                repository.replaceAll(samples);
+            }
+        });
         initCategoryChips();
+        filterNotes();
+        updateReminders();
+    }
+    
+    // 仓库在后台打开，完成前不能读写笔记
+    private boolean isRepositoryReady() {
+        if (noteRepository == null) {
+            Toast.makeText(this, "笔记加载中，请稍候", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        return true;
     }
     
+    // "全部"只创建一次，各分类的选项随 categoryFacets 的变化逐个增删或改数字
     private void initCategoryChips() {
         categoryChipGroup.removeAllViews();
+        categoryChips.clear();
         
         // 添加"全部"选项
-        Chip allChip = new Chip(this);
-        allChip.setText(getString(R.string.all_categories));
-        allChip.setCheckable(true);
-        allChip.setChecked(true);
-        allChip.setOnCheckedChangeListener((buttonView, isChecked) -> {
+        allCategoriesChip = new Chip(this);
+        allCategoriesChip.setText(getString(R.string.all_categories));
+        allCategoriesChip.setCheckable(true);
+        allCategoriesChip.setChecked(true);
+        allCategoriesChip.setOnCheckedChangeListener((buttonView, isChecked) -> {
             if (isChecked) {
                 selectedCategory = null;
                 filterNotes();
             }
         });
-        categoryChipGroup.addView(allChip);
-        
-        // 获取所有分类
-        Set<String> categories = new HashSet<>();
-        for (Note note : allNotes) {
-            categories.add(note.getCategory());
-        }
+        categoryChipGroup.addView(allCategoriesChip);
         
-        // 添加分类选项
-        for (String category : categories) {
-            Chip chip = new Chip(this);
-            chip.setText(category);
+        // 读取一次各分类的笔记数，之后按保存和删除增量更新
+        loadCategoryCounts();
+    }
+    
+    // 在写线程上读取分类计数：结果与观察者通知按写入顺序先后到达主线程，
+    // 读取期间已经应用过增量时结果可能重复计入，重新读取
+    private void loadCategoryCounts() {
+        final NoteRepository repository = noteRepository;
+        final int since = categoryFacets.getVersion();
+        repository.execute(() -> {
+            final Map<String, Integer> counts = repository.getCategoryCounts();
+            runOnUiThread(() -> {
+                if (repository == noteRepository && !categoryFacets.seed(counts, since)) {
+                    loadCategoryCounts();
+                }
+            });
+        });
+    }
+    
+    private void updateCategoryChip(String category, int count) {
+        Chip chip = categoryChips.get(category);
+        if (count == 0) {
+            if (chip != null) {
+                categoryChips.remove(category);
+                boolean checked = chip.isChecked();
+                categoryChipGroup.removeView(chip);
+                // 选中的分类没有笔记了，回到"全部"
+                if (checked) {
+                    allCategoriesChip.setChecked(true);
+                }
+            }
+        } else if (chip == null) {
+            chip = new Chip(this);
+            chip.setText(category + " (" + count + ")");
             chip.setCheckable(true);
             chip.setOnCheckedChangeListener((buttonView, isChecked) -> {
                 if (isChecked) {
@@ -133,14 +206,31 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
                     filterNotes();
                 }
             });
+            categoryChips.put(category, chip);
             categoryChipGroup.addView(chip);
+        } else {
+            chip.setText(category + " (" + count + ")");
         }
+        allCategoriesChip.setText(getString(R.string.all_categories) + " (" + categoryFacets.getTotal() + ")");
     }
 
     private void initRecyclerView() {
-        notesAdapter = new NotesAdapter(notes, this);
+        // 列表只持有摘要，打开时再按ID读取完整笔记；摘要按页读取，第一页读出后才有内容
+        notesAdapter = new NotesAdapter(new ArrayList<>(), this);
+        notesPager = new NotePager(notes -> notesAdapter.updateNotes(notes));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
         notesRecyclerView.setAdapter(notesAdapter);
-        notesRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        notesRecyclerView.setLayoutManager(layoutManager);
+        // 布局变化后也会以 (0, 0) 回调
+        notesRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int first = layoutManager.findFirstVisibleItemPosition();
+                int last = layoutManager.findLastVisibleItemPosition();
+                notesPager.onVisibleRange(first, last);
+                notesAdapter.onVisibleRange(first, last);
+            }
+        });
     }
 
     private void setListeners() {
@@ -155,7 +245,7 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
             
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                filterNotes();
+                filterNotes(true);
             }
             
             @Override
@@ -164,138 +254,104 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
     }
     
     private void filterNotes() {
-        String query = searchEditText.getText().toString().toLowerCase().trim();
-        List<Note> filtered = new ArrayList<>();
-        
-        for (Note note : allNotes) {
-            // 分类过滤
-            if (selectedCategory != null && !note.getCategory().equals(selectedCategory)) {
-                continue;
-            }
-            
-            // 待办过滤
-            if (showTodoOnly && !note.isTodo()) {
-                continue;
-            }
-            
-            // 搜索过滤
-            if (query.isEmpty() || 
-                note.getTitle().toLowerCase().contains(query) || 
-                note.getContent().toLowerCase().contains(query)) {
-                filtered.add(note);
-            }
+        filterNotes(false, false);
+    }
+    
+    private void filterNotes(boolean debounce) {
+        filterNotes(debounce, false);
+    }
+    
+    // 过滤和排序由仓库在后台线程完成，结果按页读取（NotePager），第一页经 queryCache 缓存和细化；
+    // debounce 用于逐字输入；keepPosition 用于笔记变更后的刷新，重新读到已加载的位置，滚动位置不变
+    private void filterNotes(boolean debounce, boolean keepPosition) {
+        // 仓库打开后会过滤一次
+        if (noteRepository == null) {
+            return;
+        }
+        // 条件在主线程取好，后台只读这些副本
+        // 不在这里小写：分类名等字段值区分大小写，关键字由 NoteQuery 自己小写
+        final String query = searchEditText.getText().toString().trim();
+        final String category = selectedCategory;
+        final boolean todoOnly = showTodoOnly;
+        final int mode = sortMode;
+        final NoteRepository repository = noteRepository;
+        final int count = keepPosition ? notesPager.size() : 0;
+        final int focus = keepPosition ? notesPager.getFirstVisible() : 0;
+        // 有关键字时给每页结果生成命中处的摘录，同样在后台线程完成
+        NotePager.Source source = (after, limit) -> NoteSnippet.attach(repository, after == null
+                ? queryCache.query(repository, category, todoOnly, query, mode, limit)
+                : repository.querySummaries(category, todoOnly, query, mode, after, limit), query);
+        NoteSearchExecutor.Query<NotePager.Pages> search = () -> NotePager.load(source, count, focus);
+        // 点击位置按适配器当前显示的列表解析，与界面一致
+        NoteSearchExecutor.Callback<NotePager.Pages> publish = pages -> notesPager.submit(pages);
+        if (debounce) {
+            searchExecutor.submitDebounced(search, publish);
+        } else {
+            searchExecutor.submit(search, publish);
         }
-        
-        // 排序
-        sortNotes(filtered);
-        
-        notes = filtered;
-        notesAdapter.updateNotes(notes);
     }
     
-    private void sortNotes(List<Note> notesList) {
-        Collections.sort(notesList, new Comparator<Note>() {
-            @Override
-            public int compare(Note n1, Note n2) {
-                switch (sortMode) {
-                    case 1: // 按标题
-                        return n1.getTitle().compareToIgnoreCase(n2.getTitle());
-                    case 2: // 按分类
-                        int catCompare = n1.getCategory().compareToIgnoreCase(n2.getCategory());
-                        if (catCompare != 0) return catCompare;
-                        return n2.getModifiedDate().compareTo(n1.getModifiedDate());
-                    case 3: // 按优先级
-                        int priorityCompare = Integer.compare(n2.getPriority(), n1.getPriority());
-                        if (priorityCompare != 0) return priorityCompare;
-                        return n2.getModifiedDate().compareTo(n1.getModifiedDate());
-                    default: // 按时间（默认）
-                        return n2.getModifiedDate().compareTo(n1.getModifiedDate());
-                }
-            }
-        });
+    // 结果按相似度排列，不经过 queryCache；提交时取代 setText 触发的去抖查询，之后再输入则恢复普通过滤
+    private void fuzzySearch(List<String> alternatives) {
+        if (noteRepository == null) {
+            return;
+        }
+        final String category = selectedCategory;
+        final boolean todoOnly = showTodoOnly;
+        final NoteRepository repository = noteRepository;
+        notesPager.clear();
+        searchExecutor.submit(() -> repository.fuzzySummaries(alternatives, category, todoOnly),
+                result -> notesAdapter.updateNotes(result));
+    }
+    
+    private void refreshNotes() {
+        filterNotes(false, true);
     }
 
     @Override
     public void onNoteClick(int position) {
         // 检查位置是否有效
-        if (position < 0 || position >= notes.size()) {
+        if (position < 0 || position >= notesAdapter.getItemCount()) {
             Toast.makeText(this, "无法打开笔记：无效的位置", Toast.LENGTH_SHORT).show();
             return;
         }
         
+        // 占位行的内容还在读取中
+        NoteSummary note = notesAdapter.getNote(position);
+        if (note == null) {
+            return;
+        }
+        
         Intent intent = new Intent(MainActivity.this, EditNoteActivity.class);
-        intent.putExtra("note", notes.get(position));
-        intent.putExtra("position", position);
+        intent.putExtra("note_id", note.getId());
         startActivityForResult(intent, REQUEST_CODE_EDIT_NOTE);
     }
 
     @Override
     public void onNoteLongClick(int position) {
         // 检查位置是否有效（双重保险）
-        if (position < 0 || position >= notes.size()) {
+        if (position < 0 || position >= notesAdapter.getItemCount()) {
             Toast.makeText(this, "删除失败：无效的位置", Toast.LENGTH_SHORT).show();
             return;
         }
         
-        // 保存Note对象而不是position，避免列表变化导致position失效
-        Note noteToDelete = notes.get(position);
-        if (noteToDelete == null) {
-            Toast.makeText(this, "删除失败：笔记不存在", Toast.LENGTH_SHORT).show();
-            return;
-        }
-        
         // 直接删除，不弹窗确认
-        deleteNote(noteToDelete);
+        deleteNote(position);
     }
 
-    private void deleteNote(Note noteToDelete) {
+    private void deleteNote(int position) {
+        NoteSummary noteToDelete = notesAdapter.getNote(position);
         if (noteToDelete == null) {
             Toast.makeText(this, "删除失败：笔记不存在", Toast.LENGTH_SHORT).show();
             return;
         }
         
-        // 删除前自动创建备份，方便恢复
-        BackupManager.backupNotes(this, new ArrayList<>(allNotes));
-        
-        // 从过滤后的notes列表中删除
-        // 先尝试直接匹配对象引用（更高效）
-        int positionInFiltered = notes.indexOf(noteToDelete);
-        // 如果找不到，通过匹配标题、内容和日期来查找
-        if (positionInFiltered < 0) {
-            for (int i = 0; i < notes.size(); i++) {
-                Note note = notes.get(i);
-                if (note.getTitle().equals(noteToDelete.getTitle()) &&
-                    note.getContent().equals(noteToDelete.getContent()) &&
-                    note.getDate().equals(noteToDelete.getDate())) {
-                    positionInFiltered = i;
-                    break;
-                }
-            }
-        }
-        
-        if (positionInFiltered >= 0) {
-            notes.remove(positionInFiltered);
-            notesAdapter.notifyItemRemoved(positionInFiltered);
-        }
-        
-        // 从allNotes列表中删除
-        // 先尝试直接匹配对象引用
-        boolean removed = allNotes.remove(noteToDelete);
-        // 如果没找到，通过匹配标题、内容和日期来查找并删除
-        if (!removed) {
-            for (int i = 0; i < allNotes.size(); i++) {
-                Note note = allNotes.get(i);
-                if (note.getTitle().equals(noteToDelete.getTitle()) &&
-                    note.getContent().equals(noteToDelete.getContent()) &&
-                    note.getDate().equals(noteToDelete.getDate())) {
-                    allNotes.remove(i);
-                    break;
-                }
-            }
-        }
+        // 删除前自动创建备份，方便恢复（在写线程上执行，备份的是这次删除之前的笔记）
+        final Context appContext = getApplicationContext();
+        noteRepository.executeWithNotes(notes -> BackupManager.backupNotes(appContext, notes));
         
-        NoteStorage.saveNotes(this, allNotes);
-        initCategoryChips();
+        // 按ID删除，重复内容的笔记也不会误删；列表和提醒由 noteObserver 更新
+        noteRepository.delete(noteToDelete.getId());
         Toast.makeText(this, "笔记已删除（已自动备份，可通过恢复功能恢复）", Toast.LENGTH_SHORT).show();
     }
 
@@ -304,64 +360,68 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
         super.onActivityResult(requestCode, resultCode, data);
         if (resultCode == RESULT_OK) {
             if (requestCode == 5 && data != null) {
-                // 语音搜索结果
+                // 语音搜索结果：普通文字按全部识别候选做模糊匹配；
+                // 说出了查询语法（如“category:工作 has:image”）时与手动输入一样解析
                 String query = data.getStringExtra("search_query");
+                ArrayList<String> alternatives = data.getStringArrayListExtra("search_alternatives");
                 if (query != null && searchEditText != null) {
                     searchEditText.setText(query);
-                    filterNotes();
-                }
-            } else if (requestCode == REQUEST_CODE_ADD_NOTE) {
-                Note newNote = (Note) data.getSerializableExtra("note");
-                allNotes.add(newNote);
-                NoteStorage.saveNotes(this, allNotes);
-                filterNotes();
-                initCategoryChips();
-                ReminderManager.setReminder(this, newNote);
-            } else if (requestCode == REQUEST_CODE_EDIT_NOTE) {
-                Note editedNote = (Note) data.getSerializableExtra("note");
-                int position = data.getIntExtra("position", -1);
-                if (position != -1 && position < notes.size()) {
-                    Note oldNote = notes.get(position);
-                    // 更新 allNotes 中的笔记
-                    for (int i = 0; i < allNotes.size(); i++) {
-                        Note note = allNotes.get(i);
-                        if (note.getTitle().equals(oldNote.getTitle()) && 
-                            note.getContent().equals(oldNote.getContent()) &&
-                            note.getDate().equals(oldNote.getDate())) {
-                            allNotes.set(i, editedNote);
-                            break;
-                        }
+                    if (alternatives != null && !alternatives.isEmpty() && NoteQuery.parse(query).isPlainText()) {
+                        fuzzySearch(alternatives);
+                    } else {
+                        filterNotes();
                     }
-                    NoteStorage.saveNotes(this, allNotes);
-                    filterNotes();
-                    initCategoryChips();
-                    ReminderManager.setReminder(this, editedNote);
-                }
-            } else if (requestCode == REQUEST_CODE_OCR) {
-                Note ocrNote = (Note) data.getSerializableExtra("note");
-                if (ocrNote != null) {
-                    allNotes.add(ocrNote);
-                    NoteStorage.saveNotes(this, allNotes);
-                    filterNotes();
-                    initCategoryChips();
-                }
-            } else if (requestCode == REQUEST_CODE_STICKY_NOTE) {
-                Note stickyNote = (Note) data.getSerializableExtra("note");
-                if (stickyNote != null) {
-                    allNotes.add(stickyNote);
-                    NoteStorage.saveNotes(this, allNotes);
-                    filterNotes();
-                    initCategoryChips();
                 }
             }
+            // 新增、编辑、OCR 和便签界面直接通过仓库保存，列表由 noteObserver 刷新
         }
     }
     
     @Override
     protected void onResume() {
         super.onResume();
-        // 更新所有提醒
-        ReminderManager.updateAllReminders(this, allNotes);
+        // 仓库还在后台打开，打开后由 initNotes 读取笔记和更新提醒
+        if (noteRepository == null) {
+            return;
+        }
+        // 在设置中切换了存储后端
+        NoteRepository current = NoteRepositories.get(this);
+        if (current != noteRepository) {
+            noteRepository.removeObserver(noteObserver);
+            noteRepository = current;
+            queryCache.invalidate();
+            noteRepository.addObserver(noteObserver);
+            loadCategoryCounts();
+            refreshNotes();
+        }
+        updateReminders();
+    }
+    
+    // 更新所有提醒，读取笔记和设置闹钟都在写线程上
+    private void updateReminders() {
+        final Context appContext = getApplicationContext();
+        noteRepository.executeWithNotes(notes -> ReminderManager.updateAllReminders(appContext, notes));
+    }
+    
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchExecutor.shutdown();
+        if (notesPager != null) {
+            notesPager.shutdown();
+        }
+        if (noteRepository != null) {
+            noteRepository.removeObserver(noteObserver);
+        }
+    }
+    
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // 切到后台时立即写出未落盘的改动，不阻塞主线程
+        if (noteRepository != null) {
+            noteRepository.flushAsync();
+        }
     }
     
     private void startVoiceSearch() {
@@ -424,7 +484,8 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
             getString(R.string.sort_by_time),
             getString(R.string.sort_by_title),
             getString(R.string.sort_by_category),
-            getString(R.string.sort_by_priority)
+            getString(R.string.sort_by_priority),
+            getString(R.string.sort_by_relevance)
         };
         
         new AlertDialog.Builder(this)
@@ -442,17 +503,26 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
     }
     
     private void showBackupDialog() {
+        if (!isRepositoryReady()) {
+            return;
+        }
         new AlertDialog.Builder(this)
                 .setTitle(getString(R.string.backup))
                 .setMessage("确定要备份所有笔记吗？")
                 .setPositiveButton(getString(R.string.confirm), new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        if (BackupManager.backupNotes(MainActivity.this, allNotes)) {
-                            Toast.makeText(MainActivity.this, getString(R.string.backup_success), Toast.LENGTH_SHORT).show();
-                        } else {
-                            Toast.makeText(MainActivity.this, "备份失败", Toast.LENGTH_SHORT).show();
-                        }
+                        final Context appContext = getApplicationContext();
+                        noteRepository.executeWithNotes(notes -> {
+                            boolean success = BackupManager.backupNotes(appContext, notes);
+                            runOnUiThread(() -> {
+                                if (success) {
+                                    Toast.makeText(MainActivity.this, getString(R.string.backup_success), Toast.LENGTH_SHORT).show();
+                                } else {
+                                    Toast.makeText(MainActivity.this, "备份失败", Toast.LENGTH_SHORT).show();
+                                }
+                            });
+                        });
                     }
                 })
                 .setNegativeButton(getString(R.string.cancel), null)
@@ -460,6 +530,9 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
     }
     
     private void showRestoreDialog() {
+        if (!isRepositoryReady()) {
+            return;
+        }
         String[] backupFiles = BackupManager.getBackupFiles(this);
         if (backupFiles.length == 0) {
             Toast.makeText(this, "没有找到备份文件", Toast.LENGTH_SHORT).show();
@@ -471,39 +544,50 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
                 .setItems(backupFiles, new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        List<Note> restoredNotes = BackupManager.restoreNotes(MainActivity.this, backupFiles[which]);
-                        if (restoredNotes != null) {
-                            // 恢复笔记，保持备份时的原始顺序
-                            allNotes = restoredNotes;
-                            NoteStorage.saveNotes(MainActivity.this, allNotes);
-                            
-                            // 检查是否有过滤条件
-                            String query = searchEditText.getText().toString().toLowerCase().trim();
-                            boolean hasFilter = !query.isEmpty() || selectedCategory != null || showTodoOnly;
-                            
-                            if (hasFilter) {
-                                // 有过滤条件时，应用过滤但使用时间排序以尽量保持备份顺序
-                                int savedSortMode = sortMode;
-                                sortMode = 0; // 临时设置为按时间排序
-                                filterNotes();
-                                sortMode = savedSortMode; // 恢复原来的排序模式
-                            } else {
-                                // 没有过滤条件时，直接使用恢复的笔记列表，完全保持备份时的顺序
-                                notes = new ArrayList<>(allNotes);
-                                notesAdapter.updateNotes(notes);
+                        // 读取备份和替换都在写线程上，排在之前的修改之后
+                        final String backupFile = backupFiles[which];
+                        final Context appContext = getApplicationContext();
+                        final NoteRepository repository = noteRepository;
+                        repository.execute(() -> {
+                            List<Note> restoredNotes = BackupManager.restoreNotes(appContext, backupFile);
+                            if (restoredNotes == null) {
+                                runOnUiThread(() -> Toast.makeText(MainActivity.this, "恢复失败", Toast.LENGTH_SHORT).show());
+                                return;
                             }
-                            
-                            initCategoryChips();
-                            Toast.makeText(MainActivity.this, getString(R.string.restore_success), Toast.LENGTH_SHORT).show();
-                        } else {
-                            Toast.makeText(MainActivity.this, "恢复失败", Toast.LENGTH_SHORT).show();
-                        }
+                            // 恢复笔记，保持备份时的原始顺序
+                            repository.replaceAll(restoredNotes);
+                            // 排在替换之后，执行时恢复的笔记已经可以查询
+                            repository.execute(() -> runOnUiThread(() -> showRestoredNotes(repository)));
+                        });
                     }
                 })
                 .setNegativeButton(getString(R.string.cancel), null)
                 .show();
     }
     
+    private void showRestoredNotes(NoteRepository repository) {
+        if (repository != noteRepository) {
+            return;
+        }
+        // 检查是否有过滤条件
+        String query = searchEditText.getText().toString().toLowerCase().trim();
+        boolean hasFilter = !query.isEmpty() || selectedCategory != null || showTodoOnly;
+        
+        if (hasFilter) {
+            // 有过滤条件时，应用过滤但使用时间排序以尽量保持备份顺序
+            int savedSortMode = sortMode;
+            sortMode = NoteRepository.SORT_BY_TIME; // 临时设置为按时间排序
+            filterNotes();
+            sortMode = savedSortMode; // 恢复原来的排序模式
+        } else {
+            // 没有过滤条件时，按恢复的笔记列表原样分页显示，完全保持备份时的顺序
+            searchExecutor.submit(() -> NotePager.load(NotePager.listSource(repository.getSummaries()), 0, 0),
+                    pages -> notesPager.submit(pages));
+        }
+        
+        Toast.makeText(this, getString(R.string.restore_success), Toast.LENGTH_SHORT).show();
+    }
+    
     private void showLogoutConfirmationDialog() {
         new AlertDialog.Builder(this)
                 .setTitle(getString(R.string.logout))
@@ -526,43 +610,44 @@ public class MainActivity extends AppCompatActivity implements NotesAdapter.OnNo
         finish();
     }
     
+    // 读取笔记和写文件都在写线程上，完成后回到主线程提示
     private void exportNotes() {
-        try {
-            File exportDir = new File(getExternalFilesDir(null), "exports");
-            if (!exportDir.exists()) {
-                exportDir.mkdirs();
-            }
-            
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
-            String fileName = "notes_export_" + sdf.format(new java.util.Date()) + ".txt";
-            File exportFile = new File(exportDir, fileName);
-            
-            FileWriter writer = new FileWriter(exportFile);
-            writer.write("=== 笔记导出 ===\n");
-            writer.write("导出时间: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new java.util.Date()) + "\n");
-            writer.write("共 " + allNotes.size() + " 条笔记\n\n");
-            
-            for (int i = 0; i < allNotes.size(); i++) {
-                Note note = allNotes.get(i);
-                writer.write("--- 笔记 " + (i + 1) + " ---\n");
-                writer.write("分类: " + note.getCategory() + "\n");
-                writer.write("标题: " + note.getTitle() + "\n");
-                writer.write("内容: " + note.getContent() + "\n");
-                writer.write("时间: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(note.getDate()) + "\n");
-                writer.write("\n");
-            }
-            
-            writer.close();
-            Toast.makeText(this, getString(R.string.export_success) + ": " + exportFile.getAbsolutePath(), Toast.LENGTH_LONG).show();
-        } catch (IOException e) {
-            Toast.makeText(this, getString(R.string.export_failed) + ": " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        if (!isRepositoryReady()) {
+            return;
         }
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        // 在应用关闭前保存笔记
-        NoteStorage.saveNotes(this, allNotes);
+        final File exportDir = new File(getExternalFilesDir(null), "exports");
+        final String exportSuccess = getString(R.string.export_success);
+        final String exportFailed = getString(R.string.export_failed);
+        noteRepository.executeWithNotes(allNotes -> {
+            try {
+                if (!exportDir.exists()) {
+                    exportDir.mkdirs();
+                }
+                
+                SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault());
+                String fileName = "notes_export_" + sdf.format(new java.util.Date()) + ".txt";
+                File exportFile = new File(exportDir, fileName);
+                
+                FileWriter writer = new FileWriter(exportFile);
+                writer.write("=== 笔记导出 ===\n");
+                writer.write("导出时间: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(new java.util.Date()) + "\n");
+                writer.write("共 " + allNotes.size() + " 条笔记\n\n");
+                
+                for (int i = 0; i < allNotes.size(); i++) {
+                    Note note = allNotes.get(i);
+                    writer.write("--- 笔记 " + (i + 1) + " ---\n");
+                    writer.write("分类: " + note.getCategory() + "\n");
+                    writer.write("标题: " + note.getTitle() + "\n");
+                    writer.write("内容: " + note.getContent() + "\n");
+                    writer.write("时间: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(note.getDate()) + "\n");
+                    writer.write("\n");
+                }
+                
+                writer.close();
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, exportSuccess + ": " + exportFile.getAbsolutePath(), Toast.LENGTH_LONG).show());
+            } catch (IOException e) {
+                runOnUiThread(() -> Toast.makeText(MainActivity.this, exportFailed + ": " + e.getMessage(), Toast.LENGTH_SHORT).show());
+            }
+        });
     }
 }
\ No newline at end of file
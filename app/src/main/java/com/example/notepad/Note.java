@@ -1,11 +1,22 @@
 package com.example.notepad;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
 import java.util.Date;
 
 public class Note implements Serializable {
+    // 固定序列化版本号，保证新增字段后仍能读取旧版 notes.dat
+    private static final long serialVersionUID = 6049493322022669967L;
+    private static long lastId = 0;
+
+    private long id; // 创建时分配的唯一标识，持久化后保持不变
     private String title;
-    private String content;
+    private String content; // 为 null 时由 contentLoader 按需从存储中读取
+    private transient ContentLoader contentLoader;
+    // contentLoader 上次解码的结果；内存紧张时由系统回收，下次读取再解码
+    private transient volatile SoftReference<String> loadedContent;
     private Date date;
     private Date modifiedDate;
     private String category;
@@ -23,6 +34,7 @@ public class Note implements Serializable {
     private boolean isStickyNote; // 是否为便签
 
     public Note(String title, String content) {
+        this.id = nextId();
         this.title = title;
         this.content = content;
         this.date = new Date();
@@ -40,7 +52,14 @@ public class Note implements Serializable {
         this.isStickyNote = false;
     }
     
+    // 供 NoteCodec 还原已持久化的笔记，保留原有ID
+    Note(long id, String title, String content) {
+        this(title, content);
+        this.id = id;
+    }
+
     public Note(String title, String content, String category) {
+        this.id = nextId();
         this.title = title;
         this.content = content;
         this.date = new Date();
@@ -58,6 +77,49 @@ public class Note implements Serializable {
         this.isStickyNote = false;
     }
     
+    // 复制一份可以独立修改的笔记，ID不变；延迟加载的正文共用加载器，不在这里解码
+    public Note copy() {
+        Note copy = new Note(id, title, content);
+        copy.contentLoader = contentLoader;
+        copy.loadedContent = loadedContent;
+        copy.date = date;
+        copy.modifiedDate = modifiedDate;
+        copy.category = category;
+        copy.folder = folder;
+        copy.isLocked = isLocked;
+        copy.password = password;
+        copy.isTodo = isTodo;
+        copy.isCompleted = isCompleted;
+        copy.reminderDate = reminderDate;
+        copy.priority = priority;
+        copy.color = color;
+        copy.imagePath = imagePath;
+        copy.audioPath = audioPath;
+        copy.videoPath = videoPath;
+        copy.isStickyNote = isStickyNote;
+        return copy;
+    }
+
+    // 基于时间戳生成单调递增的ID，低位留给同一毫秒内的计数
+    private static synchronized long nextId() {
+        long candidate = System.currentTimeMillis() << 10;
+        lastId = Math.max(candidate, lastId + 1);
+        return lastId;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // 旧版数据没有ID，加载时补发一个；返回是否新分配了ID
+    public boolean ensureId() {
+        if (id != 0) {
+            return false;
+        }
+        id = nextId();
+        return true;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -67,18 +129,74 @@ public class Note implements Serializable {
         this.date = new Date();
     }
 
+    // 内容按需解码，解码结果只保留软引用，列表中的笔记不会长期占用正文内存
+    public interface ContentLoader {
+        String load();
+    }
+
     public String getContent() {
-        return content;
+        if (content != null || contentLoader == null) {
+            return content;
+        }
+        SoftReference<String> cached = loadedContent;
+        String loaded = cached != null ? cached.get() : null;
+        if (loaded == null) {
+            loaded = contentLoader.load();
+            loadedContent = new SoftReference<>(loaded);
+        }
+        return loaded;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.contentLoader = null;
+        this.loadedContent = null;
         this.date = new Date();
     }
 
+    // 正文还没被改过时返回加载器，写段文件时据此直接复用存储中的压缩数据（见 NoteSegment）
+    ContentLoader getContentLoader() {
+        return contentLoader;
+    }
+
+    void setContentLoader(ContentLoader contentLoader) {
+        this.content = null;
+        this.contentLoader = contentLoader;
+        this.loadedContent = null;
+    }
+
+    // 通过 Intent 传给编辑界面时写出完整正文；逐个写字段而不是 defaultWriteObject，
+    // 序列化不改动笔记本身，格式与默认序列化相同，仍能读取旧版 notes.dat
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("title", title);
+        fields.put("content", getContent());
+        fields.put("date", date);
+        fields.put("modifiedDate", modifiedDate);
+        fields.put("category", category);
+        fields.put("folder", folder);
+        fields.put("isLocked", isLocked);
+        fields.put("password", password);
+        fields.put("isTodo", isTodo);
+        fields.put("isCompleted", isCompleted);
+        fields.put("reminderDate", reminderDate);
+        fields.put("priority", priority);
+        fields.put("color", color);
+        fields.put("imagePath", imagePath);
+        fields.put("audioPath", audioPath);
+        fields.put("videoPath", videoPath);
+        fields.put("isStickyNote", isStickyNote);
+        out.writeFields();
+    }
+
     public Date getDate() {
         return date;
     }
+
+    void setDate(Date date) {
+        this.date = date;
+    }
     
     public String getCategory() {
         return category != null ? category : "默认";
@@ -0,0 +1,163 @@
+package com.example.notepad;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 文件后端的位图二级索引：每篇笔记占一个槽位，每个分类、每个优先级和每种标记各有一个 BitSet
+// 组合过滤是按 64 位一个字做与/或，分类计数直接取位图的基数，都不需要逐条检查笔记
+// 槽位在删除后复用，位图的长度只与笔记数量有关
+// 不是线程安全的，由 FileNoteRepository 加锁
+public class NoteBitmapIndex {
+    // 标记与 NoteSummary 的 FLAG_* 一一对应
+    private static final int FLAG_COUNT = 6;
+
+    private final Map<Long, Integer> slotsById = new HashMap<>();
+    private long[] idsBySlot = new long[16];
+    private final BitSet live = new BitSet();
+    // 保持分类首次出现的顺序，分类标签按这个顺序排列
+    private final Map<String, BitSet> categories = new LinkedHashMap<>();
+    private final Map<Integer, BitSet> priorities = new HashMap<>();
+    private final BitSet[] flags = new BitSet[FLAG_COUNT];
+
+    public NoteBitmapIndex() {
+        for (int i = 0; i < FLAG_COUNT; i++) {
+            flags[i] = new BitSet();
+        }
+    }
+
+    // 新增或更新一篇笔记的索引位
+    public void put(Note note) {
+        Integer existing = slotsById.get(note.getId());
+        int slot;
+        if (existing != null) {
+            slot = existing;
+            clearSlot(slot);
+        } else {
+            slot = live.nextClearBit(0);
+            if (slot >= idsBySlot.length) {
+                idsBySlot = Arrays.copyOf(idsBySlot, Math.max(slot + 1, idsBySlot.length * 2));
+            }
+            idsBySlot[slot] = note.getId();
+            slotsById.put(note.getId(), slot);
+            live.set(slot);
+        }
+
+        BitSet category = categories.get(note.getCategory());
+        if (category == null) {
+            category = new BitSet();
+            categories.put(note.getCategory(), category);
+        }
+        category.set(slot);
+        BitSet priority = priorities.get(note.getPriority());
+        if (priority == null) {
+            priority = new BitSet();
+            priorities.put(note.getPriority(), priority);
+        }
+        priority.set(slot);
+        int noteFlags = NoteSummary.flags(note);
+        for (int i = 0; i < FLAG_COUNT; i++) {
+            if ((noteFlags & (1 << i)) != 0) {
+                flags[i].set(slot);
+            }
+        }
+        // 先设置新位再移除清空的位图，分类没变时保持原有顺序
+        prune();
+    }
+
+    public void remove(long id) {
+        Integer slot = slotsById.remove(id);
+        if (slot != null) {
+            clearSlot(slot);
+            live.clear(slot);
+            prune();
+        }
+    }
+
+    public void clear() {
+        slotsById.clear();
+        live.clear();
+        categories.clear();
+        priorities.clear();
+        for (BitSet flag : flags) {
+            flag.clear();
+        }
+    }
+
+    // 分类为 null 表示全部；返回新的位图，调用方可以继续做与/或
+    public BitSet select(String category, boolean todoOnly) {
+        BitSet result = category != null ? inCategory(category) : all();
+        if (todoOnly) {
+            result.and(flags[Integer.numberOfTrailingZeros(NoteSummary.FLAG_TODO)]);
+        }
+        return result;
+    }
+
+    public BitSet all() {
+        return (BitSet) live.clone();
+    }
+
+    public BitSet inCategory(String category) {
+        BitSet bits = categories.get(category);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    public BitSet withPriority(int priority) {
+        BitSet bits = priorities.get(priority);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    // flag 取 NoteSummary.FLAG_* 之一
+    public BitSet withFlag(int flag) {
+        return (BitSet) flags[Integer.numberOfTrailingZeros(flag)].clone();
+    }
+
+    public boolean contains(BitSet selection, long id) {
+        Integer slot = slotsById.get(id);
+        return slot != null && selection.get(slot);
+    }
+
+    public long idAt(int slot) {
+        return idsBySlot[slot];
+    }
+
+    // 每个分类的笔记数，即分类位图的基数
+    public Map<String, Integer> categoryCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, BitSet> entry : categories.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().cardinality());
+        }
+        return counts;
+    }
+
+    // 分类和优先级的数量都很少，逐个清除
+    private void clearSlot(int slot) {
+        for (BitSet bits : categories.values()) {
+            bits.clear(slot);
+        }
+        for (BitSet bits : priorities.values()) {
+            bits.clear(slot);
+        }
+        for (BitSet flag : flags) {
+            flag.clear(slot);
+        }
+    }
+
+    // 移除已经没有笔记的分类和优先级，分类标签随之消失
+    private void prune() {
+        removeEmpty(categories);
+        removeEmpty(priorities);
+    }
+
+    private static <K> void removeEmpty(Map<K, BitSet> bitmaps) {
+        Iterator<BitSet> iterator = bitmaps.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.notepad;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 分类筛选栏用的分类计数：由仓库的 getCategoryCounts 得到初始值，之后按观察者带来的
+// 变化（保存时的新旧分类、删除的笔记所在的分类）只调整涉及的一两个分类，不再重新统计全部笔记
+// 某个分类的笔记数变化时通知 Listener，数为 0 表示这个分类已经没有笔记；只在主线程调用
+public class NoteCategoryFacets {
+    public interface Listener {
+        void onCategoryCountChanged(String category, int count);
+    }
+
+    private final Listener listener;
+    // 按分类第一次出现的顺序
+    private final Map<String, Integer> counts = new LinkedHashMap<>();
+    private int total;
+    // 每应用一次增量加一；getCategoryCounts 在后台统计，期间有增量说明统计结果可能已经包含它
+    private int version;
+
+    public NoteCategoryFacets(Listener listener) {
+        this.listener = listener;
+    }
+
+    // 开始后台统计前取得，统计结果连同它一起交给 seed
+    public int getVersion() {
+        return version;
+    }
+
+    // 换上统计结果，只通知数量有变化的分类；统计期间应用过增量时不换，返回 false，调用方应重新统计
+    public boolean seed(Map<String, Integer> seeded, int since) {
+        if (since != version) {
+            return false;
+        }
+        Map<String, Integer> previous = new LinkedHashMap<>(counts);
+        counts.clear();
+        total = 0;
+        for (Map.Entry<String, Integer> entry : seeded.entrySet()) {
+            if (entry.getValue() > 0) {
+                counts.put(entry.getKey(), entry.getValue());
+                total += entry.getValue();
+            }
+        }
+        for (Map.Entry<String, Integer> entry : previous.entrySet()) {
+            if (!counts.containsKey(entry.getKey())) {
+                listener.onCategoryCountChanged(entry.getKey(), 0);
+            }
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                listener.onCategoryCountChanged(entry.getKey(), entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    // 保存了一条笔记，previousCategory 为 null 表示新增；分类没变时什么都不做
+    public void onSaved(String previousCategory, String category) {
+        version++;
+        if (previousCategory != null) {
+            if (previousCategory.equals(category)) {
+                return;
+            }
+            decrement(previousCategory);
+        }
+        Integer count = counts.get(category);
+        count = count == null ? 1 : count + 1;
+        counts.put(category, count);
+        total++;
+        listener.onCategoryCountChanged(category, count);
+    }
+
+    public void onDeleted(String category) {
+        version++;
+        decrement(category);
+    }
+
+    // 笔记总数
+    public int getTotal() {
+        return total;
+    }
+
+    // 还没有统计结果时可能减到不存在的分类，忽略
+    private void decrement(String category) {
+        Integer count = counts.get(category);
+        if (count == null) {
+            return;
+        }
+        total--;
+        if (count == 1) {
+            counts.remove(category);
+        } else {
+            counts.put(category, count - 1);
+        }
+        listener.onCategoryCountChanged(category, count - 1);
+    }
+}
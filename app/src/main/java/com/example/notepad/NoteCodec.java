@@ -0,0 +1,346 @@
+package com.example.notepad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+// 笔记与用户的紧凑二进制格式，替代 Java 默认序列化
+// 每条记录为：varint 版本号 + varint 长度 + 字段内容；新增字段只允许追加到末尾并提升版本号，
+// 旧代码读到新版本记录时只解析认识的字段、跳过其余部分，新代码按版本号决定是否读取新增字段
+public class NoteCodec {
+    public static final int NOTE_VERSION = 1;
+    public static final int USER_VERSION = 1;
+    public static final int SUMMARY_VERSION = 1;
+
+    // 文件头魔数，用来区分新格式和旧版 ObjectOutputStream 文件（以 0xACED 开头）
+    public static final byte[] NOTES_MAGIC = {'N', 'P', 'A', 'D'};
+    public static final byte[] USERS_MAGIC = {'N', 'U', 'S', 'R'};
+    public static final byte[] SUMMARIES_MAGIC = {'N', 'S', 'U', 'M'};
+    public static final int FILE_VERSION = 1;
+
+    private static final int FLAG_LOCKED = 1;
+    private static final int FLAG_TODO = 1 << 1;
+    private static final int FLAG_COMPLETED = 1 << 2;
+    private static final int FLAG_STICKY = 1 << 3;
+    private static final int FLAG_HAS_REMINDER = 1 << 4;
+    private static final int FLAG_HAS_PASSWORD = 1 << 5;
+    // 超过阈值的正文压缩后追加在末尾，原正文字段留空
+    private static final int FLAG_COMPRESSED = 1 << 6;
+
+    public static byte[] encodeNote(Note note) {
+        return encodeNote(note, true, null);
+    }
+
+    // 长正文用 dictionary 压缩，解码时需要同一个字典（见 writeNotes）
+    public static byte[] encodeNote(Note note, byte[] dictionary) {
+        return encodeNote(note, true, dictionary);
+    }
+
+    // includeContent 为 false 时正文写成空串，由调用方另行存放（见 NoteSegment）
+    public static byte[] encodeNote(Note note, boolean includeContent) {
+        return encodeNote(note, includeContent, null);
+    }
+
+    private static byte[] encodeNote(Note note, boolean includeContent, byte[] dictionary) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        try {
+            int flags = 0;
+            if (note.isLocked()) flags |= FLAG_LOCKED;
+            if (note.isTodo()) flags |= FLAG_TODO;
+            if (note.isCompleted()) flags |= FLAG_COMPLETED;
+            if (note.isStickyNote()) flags |= FLAG_STICKY;
+            if (note.getReminderDate() != null) flags |= FLAG_HAS_REMINDER;
+            if (note.getPassword() != null) flags |= FLAG_HAS_PASSWORD;
+            byte[] compressed = includeContent ? NoteCompression.compress(note.getContent(), dictionary) : null;
+            if (compressed != null) flags |= FLAG_COMPRESSED;
+
+            writeVarLong(body, note.getId());
+            writeVarLong(body, flags);
+            writeString(body, note.getTitle());
+            writeString(body, includeContent && compressed == null ? note.getContent() : "");
+            writeVarLong(body, note.getDate().getTime());
+            writeVarLong(body, note.getModifiedDate().getTime());
+            writeString(body, note.getCategory());
+            writeString(body, note.getFolder());
+            writeVarLong(body, note.getPriority());
+            writeString(body, note.getColor());
+            writeString(body, note.getImagePath());
+            writeString(body, note.getAudioPath());
+            writeString(body, note.getVideoPath());
+            if ((flags & FLAG_HAS_REMINDER) != 0) {
+                writeVarLong(body, note.getReminderDate().getTime());
+            }
+            if ((flags & FLAG_HAS_PASSWORD) != 0) {
+                writeString(body, note.getPassword());
+            }
+            if (compressed != null) {
+                writeVarLong(body, compressed.length);
+                body.write(compressed);
+            }
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不会抛出 IOException
+            throw new IllegalStateException(e);
+        }
+        return frame(NOTE_VERSION, body.toByteArray());
+    }
+
+    public static Note decodeNote(byte[] record) throws IOException {
+        return readNote(new ByteArrayInputStream(record), null);
+    }
+
+    public static Note readNote(InputStream in) throws IOException {
+        return readNote(in, null);
+    }
+
+    // 压缩过的正文不在这里解压，而是挂上延迟加载器，读取正文时才解压
+    public static Note readNote(InputStream in, byte[] dictionary) throws IOException {
+        int version = (int) readVarLong(in);
+        if (version < 1) {
+            throw new IOException("Unsupported note version: " + version);
+        }
+        InputStream body = new ByteArrayInputStream(readBytes(in, (int) readVarLong(in)));
+
+        long id = readVarLong(body);
+        int flags = (int) readVarLong(body);
+        Note note = new Note(id, readString(body), readString(body));
+        long date = readVarLong(body);
+        long modifiedDate = readVarLong(body);
+        note.setCategory(readString(body));
+        note.setFolder(readString(body));
+        note.setPriority((int) readVarLong(body));
+        note.setColor(readString(body));
+        note.setImagePath(readString(body));
+        note.setAudioPath(readString(body));
+        note.setVideoPath(readString(body));
+        if ((flags & FLAG_HAS_REMINDER) != 0) {
+            note.setReminderDate(new Date(readVarLong(body)));
+        }
+        if ((flags & FLAG_HAS_PASSWORD) != 0) {
+            note.setPassword(readString(body));
+        }
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            note.setContentLoader(NoteCompression.loader(readBytes(body, (int) readVarLong(body)), dictionary));
+        }
+        note.setLocked((flags & FLAG_LOCKED) != 0);
+        note.setTodo((flags & FLAG_TODO) != 0);
+        note.setStickyNote((flags & FLAG_STICKY) != 0);
+        // setCompleted 会刷新修改时间，所以日期放在最后还原
+        note.setCompleted((flags & FLAG_COMPLETED) != 0);
+        note.setDate(new Date(date));
+        note.setModifiedDate(new Date(modifiedDate));
+        return note;
+    }
+
+    public static byte[] encodeUser(User user) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(32);
+        try {
+            writeString(body, user.getUsername());
+            writeString(body, user.getPassword());
+            writeString(body, user.getEmail());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return frame(USER_VERSION, body.toByteArray());
+    }
+
+    public static User readUser(InputStream in) throws IOException {
+        int version = (int) readVarLong(in);
+        if (version < 1) {
+            throw new IOException("Unsupported user version: " + version);
+        }
+        InputStream body = new ByteArrayInputStream(readBytes(in, (int) readVarLong(in)));
+        return new User(readString(body), readString(body), readString(body));
+    }
+
+    public static byte[] encodeSummary(NoteSummary summary) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        try {
+            writeVarLong(body, summary.getId());
+            writeVarLong(body, summary.getFlags());
+            writeString(body, summary.getTitle());
+            writeString(body, summary.getPreview());
+            writeVarLong(body, summary.getDate().getTime());
+            writeVarLong(body, summary.getModifiedDate().getTime());
+            writeString(body, summary.getCategory());
+            writeVarLong(body, summary.getPriority());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return frame(SUMMARY_VERSION, body.toByteArray());
+    }
+
+    public static NoteSummary readSummary(InputStream in) throws IOException {
+        int version = (int) readVarLong(in);
+        if (version < 1) {
+            throw new IOException("Unsupported summary version: " + version);
+        }
+        InputStream body = new ByteArrayInputStream(readBytes(in, (int) readVarLong(in)));
+        long id = readVarLong(body);
+        int flags = (int) readVarLong(body);
+        String title = readString(body);
+        String preview = readString(body);
+        Date date = new Date(readVarLong(body));
+        Date modifiedDate = new Date(readVarLong(body));
+        String category = readString(body);
+        int priority = (int) readVarLong(body);
+        // 缓存的摘要只用来复用预览（见 NoteSummary.of），图片路径等元数据取自笔记本身，不保存
+        return new NoteSummary(id, title, preview, date, modifiedDate, category, priority, flags, null);
+    }
+
+    // 压缩字典从这批笔记自身训练得到，随文件一起保存在文件头之后（长度为 0 表示没有字典）
+    public static void writeNotes(OutputStream out, List<Note> notes) throws IOException {
+        byte[] dictionary = NoteCompression.train(notes);
+        out.write(NOTES_MAGIC);
+        writeVarLong(out, FILE_VERSION);
+        writeVarLong(out, dictionary != null ? dictionary.length : 0);
+        if (dictionary != null) {
+            out.write(dictionary);
+        }
+        writeVarLong(out, notes.size());
+        for (Note note : notes) {
+            out.write(encodeNote(note, dictionary));
+        }
+    }
+
+    // 调用方需先用 hasMagic 确认文件头，这里从魔数之后开始读
+    public static List<Note> readNotes(InputStream in) throws IOException {
+        readFileVersion(in, FILE_VERSION);
+        byte[] dictionary = null;
+        int length = (int) readVarLong(in);
+        if (length > 0) {
+            dictionary = readBytes(in, length);
+        }
+        int count = (int) readVarLong(in);
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            notes.add(readNote(in, dictionary));
+        }
+        return notes;
+    }
+
+    public static void writeSummaries(OutputStream out, List<NoteSummary> summaries) throws IOException {
+        out.write(SUMMARIES_MAGIC);
+        writeVarLong(out, FILE_VERSION);
+        writeVarLong(out, summaries.size());
+        for (NoteSummary summary : summaries) {
+            out.write(encodeSummary(summary));
+        }
+    }
+
+    public static List<NoteSummary> readSummaries(InputStream in) throws IOException {
+        readFileVersion(in, FILE_VERSION);
+        int count = (int) readVarLong(in);
+        List<NoteSummary> summaries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            summaries.add(readSummary(in));
+        }
+        return summaries;
+    }
+
+    public static void writeUsers(OutputStream out, List<User> users) throws IOException {
+        out.write(USERS_MAGIC);
+        writeVarLong(out, FILE_VERSION);
+        writeVarLong(out, users.size());
+        for (User user : users) {
+            out.write(encodeUser(user));
+        }
+    }
+
+    public static List<User> readUsers(InputStream in) throws IOException {
+        readFileVersion(in, FILE_VERSION);
+        int count = (int) readVarLong(in);
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(readUser(in));
+        }
+        return users;
+    }
+
+    // 读取并校验文件头魔数；流需支持 mark/reset，不匹配时回退到文件开头交给旧版解析
+    public static boolean hasMagic(InputStream in, byte[] magic) throws IOException {
+        in.mark(magic.length);
+        for (byte b : magic) {
+            if (in.read() != (b & 0xFF)) {
+                in.reset();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readFileVersion(InputStream in, int maxVersion) throws IOException {
+        int version = (int) readVarLong(in);
+        if (version < 1 || version > maxVersion) {
+            throw new IOException("Unsupported file version: " + version);
+        }
+        return version;
+    }
+
+    private static byte[] frame(int version, byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length + 6);
+        try {
+            writeVarLong(out, version);
+            writeVarLong(out, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    public static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeString(OutputStream out, String value) throws IOException {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(InputStream in) throws IOException {
+        return new String(readBytes(in, (int) readVarLong(in)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Negative length");
+        }
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(bytes, read, length - read);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            read += n;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.notepad;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+
+// 按当前语言排序标题（中文环境下按拼音），忽略大小写
+// Collator 不是线程安全的，统一在这里加锁；排序键由 NoteSummary 在首次排序时生成并缓存
+public class NoteCollation {
+    private static Collator collator;
+
+    // 进程内只用启动后第一次排序时的语言，已缓存的排序键之间才能互相比较
+    private static Collator collator() {
+        if (collator == null) {
+            collator = Collator.getInstance(Locale.getDefault());
+            collator.setStrength(Collator.SECONDARY);
+        }
+        return collator;
+    }
+
+    public static synchronized CollationKey key(String text) {
+        return collator().getCollationKey(text != null ? text : "");
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.notepad;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// 正文压缩：超过阈值的正文用 Deflate 压缩，可以带一个从用户自己的笔记中训练出的预置字典
+// 负载格式 = 格式(1) + [varint 原始长度 + zlib 数据]；字典由容器（段文件、备份文件）自己保存
+// zlib 头里记录了字典的 Adler-32，字典不匹配时解压会失败而不是得到错误的正文
+public class NoteCompression {
+    private static final String TAG = "NoteCompression";
+    // UTF-8 字节数，短正文压缩收益小，直接存原文
+    public static final int THRESHOLD = 512;
+
+    private static final int FORMAT_RAW = 0;
+    private static final int FORMAT_DEFLATE = 1;
+    private static final int FORMAT_DEFLATE_DICT = 2;
+
+    // 训练参数：片段长度、采样量、字典大小（Deflate 窗口为 32KB，字典留一半给正文本身）
+    private static final int SEGMENT_LENGTH = 16;
+    private static final int MAX_SAMPLE_NOTES = 512;
+    private static final int MAX_SAMPLE_BYTES = 256 * 1024;
+    private static final int MAX_SAMPLE_PER_NOTE = 4 * 1024;
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+    // 长正文的压缩率比字典训练后第一次测得的差这么多（百分比）时认为内容已偏离字典，重新训练
+    private static final int DRIFT_PERCENT = 20;
+    // 长正文总量太少时压缩率波动大，不据此判断偏离
+    private static final long MIN_DRIFT_SAMPLE_BYTES = 64 * 1024;
+
+    // 训练出的字典：段文件保存字典和它的 id，之后的合并沿用同一个字典，只在内容偏离时重新训练
+    // 用字典压缩的负载只在字典 id 相同时才能原样复用（见 isReusable）
+    // baseline 是用这个字典第一次写段文件时长正文的压缩率（千分比），0 表示还没有测量
+    public static final class Dictionary {
+        public final long id;
+        public final byte[] bytes;
+        public final int baseline;
+
+        public Dictionary(long id, byte[] bytes, int baseline) {
+            this.id = id;
+            this.bytes = bytes;
+            this.baseline = baseline;
+        }
+
+        public Dictionary withBaseline(int baseline) {
+            return new Dictionary(id, bytes, baseline);
+        }
+    }
+
+    // 编码正文；低于阈值或压缩后没有变小时存原文。dictionary 可以为 null
+    public static byte[] encode(String content, byte[] dictionary) {
+        byte[] raw = (content != null ? content : "").getBytes(StandardCharsets.UTF_8);
+        if (raw.length >= THRESHOLD) {
+            byte[] compressed = deflate(raw, dictionary);
+            if (compressed.length < raw.length) {
+                return compressed;
+            }
+        }
+        byte[] payload = new byte[raw.length + 1];
+        payload[0] = FORMAT_RAW;
+        System.arraycopy(raw, 0, payload, 1, raw.length);
+        return payload;
+    }
+
+    // 只有真正压缩过的正文返回负载，否则返回 null（调用方按原文存放）
+    public static byte[] compress(String content, byte[] dictionary) {
+        byte[] payload = encode(content, dictionary);
+        return payload[0] != FORMAT_RAW ? payload : null;
+    }
+
+    public static String decode(byte[] payload, byte[] dictionary) throws IOException {
+        if (payload.length == 0) {
+            throw new IOException("Empty content payload");
+        }
+        int format = payload[0];
+        if (format == FORMAT_RAW) {
+            return new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8);
+        }
+        if (format != FORMAT_DEFLATE && format != FORMAT_DEFLATE_DICT) {
+            throw new IOException("Unknown content format: " + format);
+        }
+
+        ByteArrayInputStream in = new ByteArrayInputStream(payload, 1, payload.length - 1);
+        int rawLength = (int) NoteCodec.readVarLong(in);
+        if (rawLength < 0) {
+            throw new IOException("Negative content length");
+        }
+        int offset = payload.length - in.available();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, offset, payload.length - offset);
+            byte[] raw = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength) {
+                int n = inflater.inflate(raw, read, rawLength - read);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IOException("Missing compression dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("Truncated compressed content");
+                    }
+                }
+                read += n;
+            }
+            return new String(raw, StandardCharsets.UTF_8);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Corrupt compressed content: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // 延迟解压：只保存压缩数据，读取正文时才解压，解压结果由 Note 以软引用缓存
+    public static Note.ContentLoader loader(byte[] payload, byte[] dictionary) {
+        return () -> {
+            try {
+                return decode(payload, dictionary);
+            } catch (IOException e) {
+                Log.e(TAG, "Error decompressing content: " + e.getMessage());
+                return "";
+            }
+        };
+    }
+
+    private static byte[] deflate(byte[] raw, byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            out.write(dictionary != null ? FORMAT_DEFLATE_DICT : FORMAT_DEFLATE);
+            NoteCodec.writeVarLong(out, raw.length);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            // ByteArrayOutputStream 不会抛出 IOException
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // 训练新字典，id 取训练时间并保证大于 previous 的 id；可用的片段太少时返回 null
+    public static Dictionary train(List<Note> notes, Dictionary previous) {
+        byte[] bytes = train(notes);
+        if (bytes == null) {
+            return null;
+        }
+        long id = Math.max(System.currentTimeMillis(), previous != null ? previous.id + 1 : 1);
+        return new Dictionary(id, bytes, 0);
+    }
+
+    // 用 id 为 dictionaryId 的字典（0 表示没有字典）编码的负载能否不解压直接用于 target 字典的容器：
+    // 原文和不带字典的压缩数据与字典无关，带字典的只有字典相同时才行
+    public static boolean isReusable(byte[] payload, long dictionaryId, Dictionary target) {
+        if (payload.length == 0) {
+            return false;
+        }
+        return payload[0] != FORMAT_DEFLATE_DICT || (target != null && target.id == dictionaryId);
+    }
+
+    // 负载对应的原文字节数，只读负载开头的长度，不解压
+    public static long rawLength(byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            throw new IOException("Empty content payload");
+        }
+        if (payload[0] == FORMAT_RAW) {
+            return payload.length - 1;
+        }
+        return NoteCodec.readVarLong(new ByteArrayInputStream(payload, 1, payload.length - 1));
+    }
+
+    // 压缩后字节数相对原文的千分比；原文总量不足以判断时返回 0
+    public static int ratio(long compressedBytes, long rawBytes) {
+        if (rawBytes < MIN_DRIFT_SAMPLE_BYTES) {
+            return 0;
+        }
+        return (int) (compressedBytes * 1000 / rawBytes);
+    }
+
+    // ratio 为用 dictionary 写出的长正文的压缩率
+    public static boolean hasDrifted(Dictionary dictionary, int ratio) {
+        return dictionary.baseline > 0 && ratio > 0
+                && ratio * 100L > dictionary.baseline * (100L + DRIFT_PERCENT);
+    }
+
+    // 从笔记正文中训练字典：统计固定长度的片段出现在多少篇笔记里，
+    // 取至少出现在两篇笔记中的片段，出现越多的越靠近字典末尾（匹配距离越短，编码越省）
+    // 片段起点由内容决定（起点处 4 个字节的哈希），同样的文字出现在不同偏移处时选出的片段相同
+    // 可用的片段太少时返回 null，不使用字典
+    public static byte[] train(List<Note> notes) {
+        int stride = Math.max(1, notes.size() / MAX_SAMPLE_NOTES);
+        Map<String, Integer> counts = new HashMap<>();
+        int sampled = 0;
+        for (int i = 0; i < notes.size() && sampled < MAX_SAMPLE_BYTES; i += stride) {
+            String content = notes.get(i).getContent();
+            if (content == null) {
+                continue;
+            }
+            byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+            int length = Math.min(raw.length, MAX_SAMPLE_PER_NOTE);
+            // 每篇笔记中的片段只计一次，ISO-8859-1 把字节一一映射为字符，便于做哈希键
+            Set<String> seen = new HashSet<>();
+            for (int offset = 0; offset + SEGMENT_LENGTH <= length; offset++) {
+                int head = (raw[offset] & 0xFF) | (raw[offset + 1] & 0xFF) << 8
+                        | (raw[offset + 2] & 0xFF) << 16 | (raw[offset + 3] & 0xFF) << 24;
+                if ((head * 0x9E3779B1) >>> 29 != 0) {
+                    continue; // 平均每 8 个字节取一个起点
+                }
+                String segment = new String(raw, offset, SEGMENT_LENGTH, StandardCharsets.ISO_8859_1);
+                if (seen.add(segment)) {
+                    Integer count = counts.get(segment);
+                    counts.put(segment, count != null ? count + 1 : 1);
+                }
+            }
+            sampled += length;
+        }
+
+        List<Map.Entry<String, Integer>> shared = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= 2) {
+                shared.add(entry);
+            }
+        }
+        if (shared.size() < 8) {
+            return null;
+        }
+        Collections.sort(shared, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+
+        int size = Math.min(DICTIONARY_SIZE, shared.size() * SEGMENT_LENGTH);
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (Map.Entry<String, Integer> entry : shared) {
+            if (position < SEGMENT_LENGTH) {
+                break;
+            }
+            position -= SEGMENT_LENGTH;
+            byte[] segment = entry.getKey().getBytes(StandardCharsets.ISO_8859_1);
+            System.arraycopy(segment, 0, dictionary, position, SEGMENT_LENGTH);
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.notepad;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// SQLite 存储：notes 表保存笔记，notes_fts 是标题和正文的 FTS4 全文索引（docid = 笔记ID）
+// 全文索引里存的是分词后的文本：中日韩文字逐字用空格隔开，这样短语查询可以匹配任意连续的字
+public class NoteDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "notes.db";
+    private static final int DATABASE_VERSION = 1;
+
+    static final String TABLE_NOTES = "notes";
+    static final String TABLE_FTS = "notes_fts";
+    static final String TABLE_TERMS = "notes_terms";
+    static final String TABLE_PINYIN = "notes_pinyin";
+    // 列表查询不取正文，正文由 SqliteNoteRepository 按需读取
+    static final String META_COLUMNS = "id, title, created, modified, category, folder, locked, password,"
+            + " todo, completed, reminder, priority, color, image_path, audio_path, video_path, sticky";
+    // 主列表只取摘要列，见 NoteSummary
+    static final String SUMMARY_COLUMNS = "id, title, preview, created, modified, category, priority,"
+            + " todo, completed, image_path, audio_path, video_path, sticky";
+
+    public NoteDatabase(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NOTES + " ("
+                + "id INTEGER PRIMARY KEY, "
+                + "title TEXT NOT NULL, "
+                + "content TEXT NOT NULL, "
+                + "preview TEXT NOT NULL DEFAULT '', "
+                + "created INTEGER NOT NULL, "
+                + "modified INTEGER NOT NULL, "
+                + "category TEXT NOT NULL, "
+                + "folder TEXT, "
+                + "locked INTEGER NOT NULL DEFAULT 0, "
+                + "password TEXT, "
+                + "todo INTEGER NOT NULL DEFAULT 0, "
+                + "completed INTEGER NOT NULL DEFAULT 0, "
+                + "reminder INTEGER, "
+                + "priority INTEGER NOT NULL DEFAULT 1, "
+                + "color TEXT, "
+                + "image_path TEXT, "
+                + "audio_path TEXT, "
+                + "video_path TEXT, "
+                + "sticky INTEGER NOT NULL DEFAULT 0)");
+        // 与列表的过滤条件和排序方式一一对应
+        db.execSQL("CREATE INDEX idx_notes_modified ON " + TABLE_NOTES + " (modified DESC)");
+        db.execSQL("CREATE INDEX idx_notes_category ON " + TABLE_NOTES + " (category, modified DESC)");
+        db.execSQL("CREATE INDEX idx_notes_todo ON " + TABLE_NOTES + " (todo, modified DESC)");
+        db.execSQL("CREATE INDEX idx_notes_priority ON " + TABLE_NOTES + " (priority DESC, modified DESC)");
+        db.execSQL("CREATE INDEX idx_notes_title ON " + TABLE_NOTES + " (title COLLATE LOCALIZED)");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_FTS + " USING fts4(title, content)");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_TERMS + " USING fts4aux(" + TABLE_FTS + ")");
+        db.execSQL("CREATE VIRTUAL TABLE " + TABLE_PINYIN + " USING fts4(tokens)");
+        // 已有的笔记由 NoteRepositories.setBackend 在后台复制进来，这里只建表
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 只有一个版本；以后改表结构时在这里按 oldVersion 逐级升级
+    }
+
+    static void upsertNote(SQLiteDatabase db, Note note) {
+        ContentValues values = new ContentValues();
+        String content = note.getContent();
+        if (content == null) {
+            content = "";
+        }
+        values.put("id", note.getId());
+        values.put("title", note.getTitle() != null ? note.getTitle() : "");
+        values.put("content", content);
+        values.put("preview", NoteSummary.preview(content));
+        values.put("created", note.getDate().getTime());
+        values.put("modified", note.getModifiedDate().getTime());
+        values.put("category", note.getCategory() != null ? note.getCategory() : "默认");
+        values.put("folder", note.getFolder());
+        values.put("locked", note.isLocked() ? 1 : 0);
+        values.put("password", note.getPassword());
+        values.put("todo", note.isTodo() ? 1 : 0);
+        values.put("completed", note.isCompleted() ? 1 : 0);
+        values.put("reminder", note.getReminderDate() != null ? note.getReminderDate().getTime() : null);
+        values.put("priority", note.getPriority());
+        values.put("color", note.getColor());
+        values.put("image_path", note.getImagePath());
+        values.put("audio_path", note.getAudioPath());
+        values.put("video_path", note.getVideoPath());
+        values.put("sticky", note.isStickyNote() ? 1 : 0);
+        db.insertWithOnConflict(TABLE_NOTES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+        // FTS4 表不支持 REPLACE 冲突处理，先删后插
+        String[] docId = {String.valueOf(note.getId())};
+        db.delete(TABLE_FTS, "docid = ?", docId);
+        ContentValues fts = new ContentValues();
+        fts.put("docid", note.getId());
+        fts.put("title", tokenize(note.getTitle()));
+        fts.put("content", tokenize(content));
+        db.insert(TABLE_FTS, null, fts);
+
+        db.delete(TABLE_PINYIN, "docid = ?", docId);
+        insertPinyin(db, note.getId(), note.getTitle(), note.getCategory());
+    }
+
+    // 没有汉字的笔记不插入
+    private static void insertPinyin(SQLiteDatabase db, long id, String title, String category) {
+        Set<String> tokens = new LinkedHashSet<>();
+        NotePinyin.collectTokens(title, tokens);
+        NotePinyin.collectTokens(category, tokens);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        ContentValues pinyin = new ContentValues();
+        pinyin.put("docid", id);
+        pinyin.put("tokens", TextUtils.join(" ", tokens));
+        db.insert(TABLE_PINYIN, null, pinyin);
+    }
+
+    static void deleteNote(SQLiteDatabase db, long id) {
+        String[] args = {String.valueOf(id)};
+        db.delete(TABLE_NOTES, "id = ?", args);
+        db.delete(TABLE_FTS, "docid = ?", args);
+        db.delete(TABLE_PINYIN, "docid = ?", args);
+    }
+
+    static void deleteAll(SQLiteDatabase db) {
+        db.delete(TABLE_NOTES, null, null);
+        db.delete(TABLE_FTS, null, null);
+        db.delete(TABLE_PINYIN, null, null);
+    }
+
+    // 把用户输入转成 MATCH 表达式：每个词一个带前缀匹配的短语，词与词之间是“与”
+    // 输入里没有可检索的字符时返回 null
+    static String toMatchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String term : text.trim().split("\\s+")) {
+            String tokens = tokenize(term).trim();
+            if (tokens.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(tokens).append("*\"");
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    // 精确短语：整段作为一个不带前缀匹配的短语，要求各个词相邻且顺序一致
+    static String toPhraseQuery(String text) {
+        String tokens = tokenize(text).trim();
+        return tokens.isEmpty() ? null : '"' + tokens + '"';
+    }
+
+    // 小写化；中日韩文字每个字单独成词，其他非字母数字的字符（包括引号、星号）替换为空格
+    static String tokenize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder tokens = new StringBuilder(lower.length() + 16);
+        for (int i = 0; i < lower.length(); ) {
+            int codePoint = lower.codePointAt(i);
+            if (NoteSearchIndex.isCjk(codePoint)) {
+                tokens.append(' ').appendCodePoint(codePoint).append(' ');
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                tokens.appendCodePoint(codePoint);
+            } else {
+                tokens.append(' ');
+            }
+            i += Character.charCount(codePoint);
+        }
+        return tokens.toString();
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.notepad;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 模糊匹配（语音搜索）：两个后端共用的相近词查找和打分
+// 相近词只找拉丁词：词典按二元组建倒排（词首补一个 '^'，如 "^n" "no" "ot" "te"），查询词的相近词
+// 只从与它共有足够多二元组的词中挑，再用 prefixDistance 核对，不逐个扫描整个词典
+// 打分：每个候选文本拆成单字、二元组和词（同 NoteSearchIndex.collectTerms），笔记得分为命中的查询词的
+// 权重（逆文档频率）× 相似度之和 / 全部查询词的权重之和；出现在一半以上笔记中的词区分度很低，不参与打分
+// 各候选文本分别打分，笔记取各候选中的最高分，越靠后的候选（识别器越不确定）打折扣越多
+public class NoteFuzzy {
+    // 模糊匹配的得分下限，以及每往后一个识别候选的折扣
+    private static final float MIN_FUZZY_SCORE = 0.5f;
+    private static final float ALTERNATIVE_DISCOUNT = 0.05f;
+    // 一个查询词最多取多少个相近词（最接近的优先），SQLite 的 MATCH 表达式不会过长
+    static final int MAX_SIMILAR_TERMS = 32;
+
+    private NoteFuzzy() {
+    }
+
+    // 拉丁词的二元组倒排表：二元组 -> 词的编号；词删除后只标记失效，再次加入时复用编号
+    // 不是线程安全的，由使用方加锁
+    public static class TermIndex {
+        private final Map<Integer, GramList> grams = new HashMap<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> terms = new ArrayList<>();
+        private final BitSet live = new BitSet();
+
+        // 中日韩文字的词不需要模糊匹配，直接忽略
+        public void add(String term) {
+            if (term.isEmpty() || NoteSearchIndex.isCjk(term.codePointAt(0))) {
+                return;
+            }
+            Integer id = ids.get(term);
+            if (id == null) {
+                id = terms.size();
+                ids.put(term, id);
+                terms.add(term);
+                for (int i = 0; i < term.length(); i++) {
+                    int gram = gram(term, i);
+                    GramList list = grams.get(gram);
+                    if (list == null) {
+                        list = new GramList();
+                        grams.put(gram, list);
+                    }
+                    list.add(id);
+                }
+            }
+            live.set(id);
+        }
+
+        public void remove(String term) {
+            Integer id = ids.get(term);
+            if (id != null) {
+                live.clear(id);
+            }
+        }
+
+        public void clear() {
+            grams.clear();
+            ids.clear();
+            terms.clear();
+            live.clear();
+        }
+
+        // 与 term 的某个前缀的编辑距离在 maxEdits 以内的词及相似度（0～1），最多 MAX_SIMILAR_TERMS 个
+        // 一次编辑最多破坏三个二元组（对调相邻两字符时），候选至少要共有 term 的二元组数 - 3 × maxEdits 个，
+        // 也至少共有一个
+        public Map<String, Float> similar(String term) {
+            int maxEdits = maxEdits(term);
+            Map<String, Float> similar = new HashMap<>();
+            if (maxEdits == 0) {
+                Integer id = ids.get(term);
+                if (id != null && live.get(id)) {
+                    similar.put(term, 1f);
+                }
+                return similar;
+            }
+            Map<Integer, Integer> shared = new HashMap<>();
+            int queryGrams = 0;
+            for (int i = 0; i < term.length(); i++) {
+                // 同一个二元组在查询词中出现多次时只数一次
+                int gram = gram(term, i);
+                if (indexOfGram(term, gram, i) < i) {
+                    continue;
+                }
+                queryGrams++;
+                GramList list = grams.get(gram);
+                if (list == null) {
+                    continue;
+                }
+                for (int k = 0; k < list.size; k++) {
+                    Integer count = shared.get(list.ids[k]);
+                    shared.put(list.ids[k], count != null ? count + 1 : 1);
+                }
+            }
+            int required = Math.max(1, queryGrams - 3 * maxEdits);
+            List<Map.Entry<String, Float>> found = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> e : shared.entrySet()) {
+                int id = e.getKey();
+                String candidate = terms.get(id);
+                if (e.getValue() < required || !live.get(id) || candidate.length() < term.length() - maxEdits) {
+                    continue;
+                }
+                int distance = prefixDistance(term, candidate, maxEdits);
+                if (distance <= maxEdits) {
+                    found.add(new AbstractMap.SimpleEntry<>(candidate, similarity(distance, maxEdits)));
+                }
+            }
+            if (found.size() > MAX_SIMILAR_TERMS) {
+                Collections.sort(found, (a, b) -> {
+                    int result = Float.compare(b.getValue(), a.getValue());
+                    return result != 0 ? result : a.getKey().compareTo(b.getKey());
+                });
+                found = found.subList(0, MAX_SIMILAR_TERMS);
+            }
+            for (Map.Entry<String, Float> e : found) {
+                similar.put(e.getKey(), e.getValue());
+            }
+            return similar;
+        }
+
+        // 第 i 个二元组：前一个字符（词首为 '^'）和第 i 个字符
+        private static int gram(String term, int i) {
+            char previous = i == 0 ? '^' : term.charAt(i - 1);
+            return previous << 16 | term.charAt(i);
+        }
+
+        private static int indexOfGram(String term, int gram, int before) {
+            for (int i = 0; i < before; i++) {
+                if (gram(term, i) == gram) {
+                    return i;
+                }
+            }
+            return before;
+        }
+    }
+
+    private static class GramList {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    // 单个候选文本的得分（0～1）：matches 的第 t 项是第 t 个查询词在各笔记中命中的最接近的词的相似度，
+    // 它的大小就是这个查询词命中的笔记数；count 为笔记总数
+    static Map<Long, Float> score(List<Map<Long, Float>> matches, int count) {
+        int[] frequencies = new int[matches.size()];
+        for (int t = 0; t < frequencies.length; t++) {
+            frequencies[t] = matches.get(t).size();
+        }
+        boolean[] scored = scoredTerms(frequencies, count);
+        Map<Long, Float> scores = new HashMap<>();
+        float total = 0;
+        for (int t = 0; t < frequencies.length; t++) {
+            if (!scored[t]) {
+                continue;
+            }
+            float weight = weight(frequencies[t], count);
+            total += weight;
+            for (Map.Entry<Long, Float> e : matches.get(t).entrySet()) {
+                Float previous = scores.get(e.getKey());
+                scores.put(e.getKey(), (previous != null ? previous : 0) + weight * e.getValue());
+            }
+        }
+        if (total > 0) {
+            for (Map.Entry<Long, Float> e : scores.entrySet()) {
+                e.setValue(e.getValue() / total);
+            }
+        }
+        return scores;
+    }
+
+    // scores 依次是每个候选文本的打分，合并成按最高分排列的ID，只保留不低于 MIN_FUZZY_SCORE 的
+    static long[] rank(List<Map<Long, Float>> scores) {
+        Map<Long, Float> best = new HashMap<>();
+        for (int rank = 0; rank < scores.size(); rank++) {
+            float discount = 1 - ALTERNATIVE_DISCOUNT * rank;
+            for (Map.Entry<Long, Float> e : scores.get(rank).entrySet()) {
+                float score = e.getValue() * discount;
+                Float previous = best.get(e.getKey());
+                if (score >= MIN_FUZZY_SCORE && (previous == null || score > previous)) {
+                    best.put(e.getKey(), score);
+                }
+            }
+        }
+        List<Map.Entry<Long, Float>> ranked = new ArrayList<>(best.entrySet());
+        Collections.sort(ranked, (a, b) -> {
+            int result = Float.compare(b.getValue(), a.getValue());
+            return result != 0 ? result : Long.compare(a.getKey(), b.getKey());
+        });
+        long[] ids = new long[ranked.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = ranked.get(i).getKey();
+        }
+        return ids;
+    }
+
+    // 参与打分的查询词：出现在一半以上笔记中的词不参与，全都这么常见时只好全部保留
+    static boolean[] scoredTerms(int[] frequencies, int count) {
+        boolean[] scored = new boolean[frequencies.length];
+        boolean any = false;
+        for (int t = 0; t < frequencies.length; t++) {
+            scored[t] = frequencies[t] * 2 <= count;
+            any |= scored[t];
+        }
+        if (!any) {
+            Arrays.fill(scored, true);
+        }
+        return scored;
+    }
+
+    // 容许的编辑次数：短词容易误配，不做模糊匹配
+    static int maxEdits(String term) {
+        return term.length() < 3 ? 0 : term.length() < 6 ? 1 : 2;
+    }
+
+    static float similarity(int distance, int maxEdits) {
+        return 1 - (float) distance / (maxEdits + 1);
+    }
+
+    // 逆文档频率
+    static float weight(int frequency, int count) {
+        return (float) Math.log(1 + (double) count / (Math.min(frequency, count) + 1));
+    }
+
+    // query 与 term 的某个前缀之间的最小编辑距离（相邻两字符对调算一次），超过 max 时返回 max + 1
+    static int prefixDistance(String query, String term, int max) {
+        int length = query.length();
+        int[] before = new int[length + 1];
+        int[] previous = new int[length + 1];
+        int[] current = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            previous[i] = i;
+        }
+        int best = previous[length];
+        for (int j = 1; j <= term.length(); j++) {
+            current[0] = j;
+            int rowMin = j;
+            for (int i = 1; i <= length; i++) {
+                int cost = query.charAt(i - 1) == term.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[i] + 1, current[i - 1] + 1), previous[i - 1] + cost);
+                if (i > 1 && j > 1 && query.charAt(i - 1) == term.charAt(j - 2)
+                        && query.charAt(i - 2) == term.charAt(j - 1)) {
+                    distance = Math.min(distance, before[i - 2] + 1);
+                }
+                current[i] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            best = Math.min(best, current[length]);
+            // 这一行都已超过上限，再往后只会更大
+            if (rowMin > max) {
+                break;
+            }
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return best <= max ? best : max + 1;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.notepad;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 追加式日志：每次增删改只追加一条小记录，由 NoteStorage 定期合并进快照
+// 文件头 = 魔数(4)；记录 = 记录魔数(4) + 操作(1) + ID(8) + 长度(4) + CRC32C(4) + 内容
+// 校验失败的记录被跳过，从下一个记录魔数处继续回放
+public class NoteJournal {
+    private static final String TAG = "NoteJournal";
+    private static final byte[] MAGIC = {'N', 'J', 'R', 'N'};
+    private static final int RECORD_MAGIC = 0x4E4A5243; // "NJRC"
+    private static final int RECORD_HEADER_SIZE = 21;
+    private static final byte OP_DELETE = 2;
+    private static final byte OP_UPSERT = 3;
+
+    private final File file;
+
+    public NoteJournal(File file) {
+        this.file = file;
+    }
+
+    public long size() {
+        return file.length();
+    }
+
+    // 一批修改拼成一次写入并 fsync；值为 null 表示删除该ID
+    public void appendAll(Map<Long, Note> changes) throws IOException {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(batch);
+        if (file.length() == 0) {
+            dos.write(MAGIC);
+        }
+        for (Map.Entry<Long, Note> change : changes.entrySet()) {
+            Note note = change.getValue();
+            byte op = note != null ? OP_UPSERT : OP_DELETE;
+            byte[] payload = note != null ? NoteCodec.encodeNote(note) : new byte[0];
+
+            ByteArrayOutputStream checked = new ByteArrayOutputStream(payload.length + 13);
+            DataOutputStream checkedOut = new DataOutputStream(checked);
+            checkedOut.writeByte(op);
+            checkedOut.writeLong(change.getKey());
+            checkedOut.writeInt(payload.length);
+            checkedOut.write(payload);
+            byte[] body = checked.toByteArray();
+
+            dos.writeInt(RECORD_MAGIC);
+            dos.write(body, 0, 13);
+            dos.writeInt(Crc32c.compute(body));
+            dos.write(payload);
+        }
+        dos.flush();
+
+        FileOutputStream fos = new FileOutputStream(file, true);
+        try {
+            fos.write(batch.toByteArray());
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+    }
+
+    // 把日志中的记录依次应用到 notesById 上，返回成功应用的记录数
+    public int replay(LinkedHashMap<Long, Note> notesById) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        byte[] data;
+        try {
+            data = readFile();
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading journal: " + e.getMessage());
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int applied = 0;
+        int skippedBytes = 0;
+        // 文件头损坏时从头开始找记录魔数
+        int position = hasMagic(data) ? MAGIC.length : 0;
+        while (position + RECORD_HEADER_SIZE <= data.length) {
+            if (buffer.getInt(position) == RECORD_MAGIC) {
+                int length = buffer.getInt(position + 13);
+                int end = position + RECORD_HEADER_SIZE + length;
+                if (length >= 0 && end <= data.length && end > position) {
+                    int crc = Crc32c.start();
+                    crc = Crc32c.update(crc, data, position + 4, 13);
+                    crc = Crc32c.update(crc, data, position + RECORD_HEADER_SIZE, length);
+                    if (Crc32c.finish(crc) == buffer.getInt(position + 17)) {
+                        try {
+                            apply(data[position + 4], buffer.getLong(position + 5),
+                                    data, position + RECORD_HEADER_SIZE, length, notesById);
+                            applied++;
+                        } catch (IOException e) {
+                            Log.e(TAG, "Skipping undecodable record: " + e.getMessage());
+                        }
+                        position = end;
+                        continue;
+                    }
+                }
+            }
+            // 损坏区域：逐字节寻找下一条记录
+            position++;
+            skippedBytes++;
+        }
+        if (skippedBytes > 0 || position < data.length) {
+            Log.e(TAG, "Journal " + file.getName() + " damaged, skipped " + skippedBytes
+                    + " bytes, dropped " + (data.length - position) + " tail bytes");
+        }
+        return applied;
+    }
+
+    private void apply(byte op, long noteId, byte[] data, int offset, int length,
+                       LinkedHashMap<Long, Note> notesById) throws IOException {
+        if (op == OP_UPSERT) {
+            byte[] payload = new byte[length];
+            System.arraycopy(data, offset, payload, 0, length);
+            notesById.put(noteId, NoteCodec.decodeNote(payload));
+        } else if (op == OP_DELETE) {
+            notesById.remove(noteId);
+        }
+    }
+
+    private static boolean hasMagic(byte[] data) {
+        if (data.length < MAGIC.length) {
+            return data.length == 0;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (data[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readFile() throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            dis.readFully(data);
+        } finally {
+            dis.close();
+        }
+        return data;
+    }
+
+    public boolean delete() {
+        return !file.exists() || file.delete();
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.notepad;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 仓库实现共用的观察者列表，回调期间可以安全地注册或注销
+// 回调总在主线程执行：在后台线程完成的修改（SQLite 写线程上的提交、后台恢复备份等）转到主线程通知
+public class NoteObservers {
+    private final List<NoteRepository.Observer> observers = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public void add(NoteRepository.Observer observer) {
+        if (!observers.contains(observer)) {
+            observers.add(observer);
+        }
+    }
+
+    public void remove(NoteRepository.Observer observer) {
+        observers.remove(observer);
+    }
+
+    public void notifySaved(Note note, String previousCategory) {
+        dispatch(() -> {
+            for (NoteRepository.Observer observer : observers) {
+                observer.onNoteSaved(note, previousCategory);
+            }
+        });
+    }
+
+    public void notifyDeleted(Note note) {
+        dispatch(() -> {
+            for (NoteRepository.Observer observer : observers) {
+                observer.onNoteDeleted(note);
+            }
+        });
+    }
+
+    public void notifyReplaced() {
+        dispatch(() -> {
+            for (NoteRepository.Observer observer : observers) {
+                observer.onNotesReplaced();
+            }
+        });
+    }
+
+    // 已经在主线程时立即回调，保持与修改的先后顺序
+    private void dispatch(Runnable notification) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notification.run();
+        } else {
+            mainHandler.post(notification);
+        }
+    }
+}
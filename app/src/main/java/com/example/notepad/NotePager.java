@@ -0,0 +1,264 @@
+package com.example.notepad;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 主列表的分页加载：结果按页（PAGE_SIZE 条）读取，第一页读出来就显示，
+// 滚动到已加载部分的末尾附近时在后台预取下一页；离可见位置超过 MAX_RESIDENT_PAGES / 2 页的页丢掉内容，
+// 只留下页的边界，滚回来时按边界重新读取，内存中的摘要数与结果总数无关
+// 用键集分页（NoteRepository.querySummaries 的 after）：每页记下它前面的一条，从那一条之后读
+// 交给 Listener 的列表里，丢掉内容的页用 null 占位，列表长度和滚动位置不变
+// 除 Source 和 load 在后台线程调用外，其他方法都只能在主线程调用
+public class NotePager {
+    public static final int PAGE_SIZE = 50;
+    private static final int MAX_RESIDENT_PAGES = 8;
+    // 可见的最后一条离已加载部分的末尾不到这么多条时预取下一页
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    // 读取排在 after 之后的最多 limit 条，after 为 null 时从头读
+    public interface Source {
+        List<NoteSummary> load(NoteSummary after, int limit);
+    }
+
+    public interface Listener {
+        // notes 提交后不再修改
+        void onPagesChanged(List<NoteSummary> notes);
+    }
+
+    private static class Page {
+        // 上一页的最后一条，第一页为 null
+        final NoteSummary after;
+        // 本页的最后一条，下一页从它之后读
+        final NoteSummary last;
+        final int size;
+        // null 表示内容已丢弃
+        List<NoteSummary> notes;
+
+        Page(NoteSummary after, List<NoteSummary> notes) {
+            this.after = after;
+            this.last = notes.get(notes.size() - 1);
+            this.size = notes.size();
+            this.notes = notes;
+        }
+    }
+
+    // 一次查询读出的前几页，由 load 在后台线程生成，交给 submit 在主线程换上
+    public static class Pages {
+        private final Source source;
+        private final List<Page> pages;
+        private final boolean complete;
+        private final int focus;
+
+        private Pages(Source source, List<Page> pages, boolean complete, int focus) {
+            this.source = source;
+            this.pages = pages;
+            this.complete = complete;
+            this.focus = focus;
+        }
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // 读取结果交回主线程
+    private final Executor mainExecutor;
+    private final Listener listener;
+    private Source source;
+    private List<Page> pages = new ArrayList<>();
+    // 最后一页已经读到（不足一页或读出空页）
+    private boolean complete = true;
+    // 每次 submit、clear 或丢掉被删除的页时加一，之前发出的读取结果作废
+    private int generation;
+    // 正在读取的页序号，pages.size() 表示下一页
+    private final Set<Integer> loading = new HashSet<>();
+    private int firstVisible;
+    private int lastVisible;
+
+    public NotePager(Listener listener) {
+        this(listener, new Handler(Looper.getMainLooper())::post);
+    }
+
+    // 测试时由 mainExecutor 代替主线程的 Handler
+    NotePager(Listener listener, Executor mainExecutor) {
+        this.listener = listener;
+        this.mainExecutor = mainExecutor;
+    }
+
+    // 按 notes 现有的顺序分页，用于已经排好、不再经过查询的结果（如恢复备份后保持备份时的顺序）；
+    // 按ID找到 after 的位置，after 已不在 notes 中时读不到后续的页
+    public static Source listSource(List<NoteSummary> notes) {
+        final List<NoteSummary> snapshot = new ArrayList<>(notes);
+        final Map<Long, Integer> positions = new HashMap<>(snapshot.size() * 2);
+        for (int i = 0; i < snapshot.size(); i++) {
+            positions.put(snapshot.get(i).getId(), i);
+        }
+        return (after, limit) -> {
+            int start = 0;
+            if (after != null) {
+                Integer position = positions.get(after.getId());
+                start = position != null ? position + 1 : snapshot.size();
+            }
+            return new ArrayList<>(snapshot.subList(start, Math.min(snapshot.size(), start + limit)));
+        };
+    }
+
+    // 在后台线程从头读到至少 count 条（至少一页）或读完为止，只保留 focus 所在页附近的内容
+    // 笔记变更后刷新时 count 取当前已加载的条数，列表不会缩短，滚动位置不变
+    public static Pages load(Source source, int count, int focus) {
+        List<Page> pages = new ArrayList<>();
+        NoteSummary after = null;
+        boolean complete = false;
+        while (!complete && (pages.isEmpty() || pages.size() * PAGE_SIZE < count)) {
+            List<NoteSummary> notes = source.load(after, PAGE_SIZE);
+            complete = notes.size() < PAGE_SIZE;
+            if (notes.isEmpty()) {
+                break;
+            }
+            Page page = new Page(after, notes);
+            if (!isResident(pages.size(), focus / PAGE_SIZE)) {
+                page.notes = null;
+            }
+            pages.add(page);
+            after = page.last;
+        }
+        return new Pages(source, pages, complete, focus);
+    }
+
+    public void submit(Pages result) {
+        generation++;
+        loading.clear();
+        source = result.source;
+        pages = new ArrayList<>(result.pages);
+        complete = result.complete;
+        // 真正的可见范围在列表布局后由 onVisibleRange 更新
+        firstVisible = result.focus;
+        lastVisible = result.focus;
+        update(true);
+    }
+
+    // 改为显示不分页的结果（如语音模糊搜索）时调用，停止加载
+    public void clear() {
+        generation++;
+        loading.clear();
+        source = null;
+        pages = new ArrayList<>();
+        complete = true;
+    }
+
+    public void shutdown() {
+        clear();
+        executor.shutdownNow();
+    }
+
+    // 已加载的条数，含占位
+    public int size() {
+        int size = 0;
+        for (Page page : pages) {
+            size += page.size;
+        }
+        return size;
+    }
+
+    public int getFirstVisible() {
+        return firstVisible;
+    }
+
+    // 列表滚动或布局变化后调用，位置是适配器中的位置
+    public void onVisibleRange(int first, int last) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        update(false);
+    }
+
+    // 补读可见的页及前后各一页、预取下一页、丢掉远处的页；有变化时发布新列表
+    private void update(boolean changed) {
+        if (source == null) {
+            return;
+        }
+        int firstPage = firstVisible / PAGE_SIZE;
+        int lastPage = lastVisible / PAGE_SIZE;
+        for (int i = Math.max(0, firstPage - 1); i <= Math.min(pages.size() - 1, lastPage + 1); i++) {
+            if (pages.get(i).notes == null) {
+                fetch(i);
+            }
+        }
+        if (!complete && lastVisible >= size() - PREFETCH_DISTANCE) {
+            fetch(pages.size());
+        }
+        int focus = (firstPage + lastPage) / 2;
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (page.notes != null && !isResident(i, focus)) {
+                page.notes = null;
+                changed = true;
+            }
+        }
+        if (changed) {
+            publish();
+        }
+    }
+
+    private static boolean isResident(int index, int focus) {
+        return Math.abs(index - focus) <= MAX_RESIDENT_PAGES / 2;
+    }
+
+    private void fetch(int index) {
+        if (!loading.add(index)) {
+            return;
+        }
+        final NoteSummary after = index == 0 ? null
+                : index < pages.size() ? pages.get(index).after : pages.get(index - 1).last;
+        final Source source = this.source;
+        final int token = generation;
+        executor.execute(() -> {
+            List<NoteSummary> notes = source.load(after, PAGE_SIZE);
+            mainExecutor.execute(() -> {
+                if (token != generation) {
+                    return;
+                }
+                loading.remove(index);
+                if (index == pages.size()) {
+                    complete = notes.size() < PAGE_SIZE;
+                    if (!notes.isEmpty()) {
+                        pages.add(new Page(after, notes));
+                    }
+                } else if (!notes.isEmpty()) {
+                    // 数据没变时与原来的页相同；变化会触发整体刷新，这里只需保证边界有效
+                    pages.set(index, new Page(after, notes));
+                } else {
+                    // 这一页的笔记在整体刷新到来之前已被删除：丢掉它和后面的页（进行中的读取一并作废），
+                    // 之后按需从前一页的末尾接着读，不会反复重读这一页
+                    generation++;
+                    loading.clear();
+                    pages.subList(index, pages.size()).clear();
+                    complete = false;
+                }
+                update(true);
+            });
+        });
+    }
+
+    private void publish() {
+        List<NoteSummary> notes = new ArrayList<>(size());
+        for (Page page : pages) {
+            if (page.notes != null) {
+                notes.addAll(page.notes);
+            } else {
+                notes.addAll(Collections.<NoteSummary>nCopies(page.size, null));
+            }
+        }
+        listener.onPagesChanged(notes);
+    }
+}
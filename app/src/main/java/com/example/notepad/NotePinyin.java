@@ -0,0 +1,120 @@
+package com.example.notepad;
+
+import android.icu.text.Transliterator;
+import android.os.Build;
+
+import java.text.Collator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// 汉字转拼音，供拼音搜索使用（文件后端的 NotePinyinIndex、SQLite 后端的 notes_pinyin 表）
+// Android 10 起用系统 ICU 的 Han-Latin 转写得到不带声调的全拼；更早的系统没有这个转写，
+// 改用中文排序规则（按拼音排序）与每个首字母的第一个字比较，只能得到首字母
+// 每个字的结果都缓存，同一个字只转写一次；多音字只取转写给出的读音
+public class NotePinyin {
+    // 从每个汉字开始最多取这么多个字生成词，输入更长的拼音时按前缀匹配不到
+    static final int MAX_TOKEN_CHARS = 8;
+
+    // 各首字母在拼音排序中的第一个字，没有 i、u、v 开头的拼音
+    private static final String INITIAL_BOUNDARIES = "阿芭擦搭蛾发噶哈击喀垃妈拿哦啪期然撒塌挖昔压匝";
+    private static final String INITIALS = "abcdefghjklmnopqrstwxyz";
+
+    private static final Map<Integer, String> cache = new HashMap<>();
+    private static Transliterator transliterator;
+    private static Collator collator;
+
+    // 一个汉字的拼音（小写、不带声调），不是汉字或无法转写时返回空串
+    public static synchronized String of(int codePoint) {
+        if (Character.UnicodeScript.of(codePoint) != Character.UnicodeScript.HAN) {
+            return "";
+        }
+        String pinyin = cache.get(codePoint);
+        if (pinyin == null) {
+            pinyin = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? transliterate(codePoint) : initial(codePoint);
+            cache.put(codePoint, pinyin);
+        }
+        return pinyin;
+    }
+
+    private static String transliterate(int codePoint) {
+        if (transliterator == null) {
+            transliterator = Transliterator.getInstance("Han-Latin; Latin-ASCII");
+        }
+        String result = transliterator.transliterate(new String(Character.toChars(codePoint)));
+        StringBuilder pinyin = new StringBuilder(result.length());
+        for (int i = 0; i < result.length(); i++) {
+            char c = result.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                pinyin.append(c);
+            }
+        }
+        return pinyin.toString();
+    }
+
+    private static String initial(int codePoint) {
+        if (collator == null) {
+            collator = Collator.getInstance(Locale.CHINA);
+        }
+        String character = new String(Character.toChars(codePoint));
+        for (int i = INITIAL_BOUNDARIES.length() - 1; i >= 0; i--) {
+            if (collator.compare(character, INITIAL_BOUNDARIES.substring(i, i + 1)) >= 0) {
+                return INITIALS.substring(i, i + 1);
+            }
+        }
+        return "";
+    }
+
+    // 每一段连续的汉字里，从每个字开始（最多 MAX_TOKEN_CHARS 个字）生成全拼和首字母两个词，
+    // 例如“工作计划”得到 gongzuojihua、gzjh、zuojihua、zjh……，输入任意一个词的前缀都能匹配
+    public static void collectTokens(String text, Set<String> tokens) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            // 找出一段能转写的连续汉字
+            int start = i;
+            int count = 0;
+            while (i < length && !of(text.codePointAt(i)).isEmpty()) {
+                i += Character.charCount(text.codePointAt(i));
+                count++;
+            }
+            if (count == 0) {
+                i += Character.charCount(text.codePointAt(i));
+                continue;
+            }
+            String[] syllables = new String[count];
+            for (int k = 0, j = start; k < count; k++) {
+                syllables[k] = of(text.codePointAt(j));
+                j += Character.charCount(text.codePointAt(j));
+            }
+            for (int from = 0; from < count; from++) {
+                StringBuilder full = new StringBuilder();
+                StringBuilder initials = new StringBuilder();
+                for (int k = from; k < count && k < from + MAX_TOKEN_CHARS; k++) {
+                    full.append(syllables[k]);
+                    initials.append(syllables[k].charAt(0));
+                }
+                tokens.add(full.toString());
+                tokens.add(initials.toString());
+            }
+        }
+    }
+
+    // 只有英文字母的关键字才可能是拼音；单个字母几乎能匹配所有含汉字的笔记，不按拼音查
+    public static boolean isPinyinQuery(String text) {
+        if (text == null || text.length() < 2) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
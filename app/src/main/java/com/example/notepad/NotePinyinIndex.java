@@ -0,0 +1,150 @@
+package com.example.notepad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// 文件后端的拼音索引：标题和分类的全拼、首字母词（见 NotePinyin.collectTokens）按字母序放在 TreeMap 里，
+// 查询时取出以输入的字母开头的一段词，合并它们的笔记，查询时不需要转写任何笔记
+// 每篇笔记记下生成词用的原文，标题和分类都没变时不重新生成
+// 不是线程安全的，由 FileNoteRepository 加锁
+public class NotePinyinIndex {
+    // 还没有笔记的词共用的空数组
+    private static final long[] NO_IDS = new long[0];
+
+    private final TreeMap<String, Ids> tokens = new TreeMap<>();
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    private static class Entry {
+        final String source;
+        final String[] tokens;
+
+        Entry(String source, String[] tokens) {
+            this.source = source;
+            this.tokens = tokens;
+        }
+    }
+
+    // 以这个词为完整词的笔记（升序）
+    private static class Ids {
+        final String token;
+        long[] ids = NO_IDS;
+        int size;
+
+        Ids(String token) {
+            this.token = token;
+        }
+    }
+
+    // 新增或更新一篇笔记
+    public void put(Note note) {
+        String source = source(note);
+        Entry entry = entries.get(note.getId());
+        if (entry != null && entry.source.equals(source)) {
+            return;
+        }
+        remove(note.getId());
+        Set<String> collected = new LinkedHashSet<>();
+        NotePinyin.collectTokens(note.getTitle(), collected);
+        NotePinyin.collectTokens(note.getCategory(), collected);
+        String[] stored = new String[collected.size()];
+        int i = 0;
+        for (String token : collected) {
+            stored[i++] = insert(token, note.getId());
+        }
+        entries.put(note.getId(), new Entry(source, stored));
+    }
+
+    public void remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            for (String token : entry.tokens) {
+                delete(token, id);
+            }
+        }
+    }
+
+    public void clear() {
+        tokens.clear();
+        entries.clear();
+    }
+
+    // 去掉不在 ids 中的笔记
+    public void retainAll(Collection<Long> ids) {
+        List<Long> stale = new ArrayList<>();
+        for (Long id : entries.keySet()) {
+            if (!ids.contains(id)) {
+                stale.add(id);
+            }
+        }
+        for (Long id : stale) {
+            remove(id);
+        }
+    }
+
+    // 有词以 query（拼音或首字母，不区分大小写）开头的笔记ID（升序）
+    public long[] search(String query) {
+        String lower = query.toLowerCase();
+        Collection<Ids> matches = tokens.subMap(lower, lower + Character.MAX_VALUE).values();
+        int total = 0;
+        for (Ids list : matches) {
+            total += list.size;
+        }
+        if (total == 0) {
+            return NO_IDS;
+        }
+        long[] ids = new long[total];
+        int length = 0;
+        for (Ids list : matches) {
+            System.arraycopy(list.ids, 0, ids, length, list.size);
+            length += list.size;
+        }
+        Arrays.sort(ids);
+        return NoteSearchIndex.distinct(ids);
+    }
+
+    // 返回倒排表里的键，每个词只保留一份字符串
+    private String insert(String token, long id) {
+        Ids list = tokens.get(token);
+        if (list == null) {
+            list = new Ids(token);
+            tokens.put(token, list);
+        }
+        int position = -Arrays.binarySearch(list.ids, 0, list.size, id) - 1;
+        if (list.size == list.ids.length) {
+            list.ids = Arrays.copyOf(list.ids, Math.max(2, list.size * 2));
+        }
+        System.arraycopy(list.ids, position, list.ids, position + 1, list.size - position);
+        list.ids[position] = id;
+        list.size++;
+        return list.token;
+    }
+
+    private void delete(String token, long id) {
+        Ids list = tokens.get(token);
+        if (list == null) {
+            return;
+        }
+        int position = Arrays.binarySearch(list.ids, 0, list.size, id);
+        if (position < 0) {
+            return;
+        }
+        if (list.size == 1) {
+            tokens.remove(token);
+            return;
+        }
+        System.arraycopy(list.ids, position + 1, list.ids, position, list.size - position - 1);
+        list.size--;
+    }
+
+    // 标题和分类之外的修改不影响拼音词
+    private static String source(Note note) {
+        return note.getTitle() + "\n" + note.getCategory();
+    }
+}
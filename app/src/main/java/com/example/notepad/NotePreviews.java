@@ -0,0 +1,192 @@
+package com.example.notepad;
+
+import android.text.TextPaint;
+import android.widget.TextView;
+
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// 列表正文预览的排版：截断和文字测量（PrecomputedTextCompat）都放到后台线程，绑定时主线程不再测量
+// 预览先截到正文 TextView 的 maxLines 行能显示的部分（NoteSummary 的预览本身不超过 PREVIEW_LENGTH 个字）
+// 结果按（笔记ID、修改时间、行宽）缓存，笔记修改或列表宽度变化（如旋转屏幕）后重新排版
+// 排版参数取自第一次绑定的正文 TextView，行宽取自最近一次绑定的已布局的正文 TextView，所有行的样式相同；
+// 只在主线程调用
+public class NotePreviews {
+    private static final int MAX_ENTRIES = 512;
+    // 可见范围前后各提前排版这么多条，其余的在绑定时排版
+    private static final int PREFETCH_MARGIN = NotePager.PAGE_SIZE;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private static class Key {
+        final long id;
+        final long modified;
+        final int width;
+
+        Key(NoteSummary note, int width) {
+            this.id = note.getId();
+            this.modified = note.getModifiedDate().getTime();
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return id == other.id && modified == other.modified && width == other.width;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(id);
+            result = 31 * result + Long.hashCode(modified);
+            return 31 * result + width;
+        }
+    }
+
+    private static class Entry {
+        // 截断前的文字
+        final CharSequence source;
+        final Future<PrecomputedTextCompat> text;
+
+        Entry(CharSequence source, Future<PrecomputedTextCompat> text) {
+            this.source = source;
+            this.text = text;
+        }
+    }
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private PrecomputedTextCompat.Params params;
+    // 只在排版线程上使用的画笔副本，按行宽截断时测量文字
+    private TextPaint paint;
+    private int maxLines = Integer.MAX_VALUE;
+    // 正文的行宽，还没有布局过时为 0，只按行数截断
+    private int width;
+
+    // 设置正文；排版还没完成时 AppCompatTextView 在测量时才等待结果
+    public void bind(TextView textView, NoteSummary note) {
+        if (params == null) {
+            params = TextViewCompat.getTextMetricsParams(textView);
+            paint = new TextPaint(params.getTextPaint());
+            // 没有按行数限制时为 -1
+            maxLines = textView.getMaxLines() > 0 ? textView.getMaxLines() : Integer.MAX_VALUE;
+        }
+        int lineWidth = textView.getWidth() - textView.getTotalPaddingLeft() - textView.getTotalPaddingRight();
+        if (lineWidth > 0) {
+            width = lineWidth;
+        }
+        if (textView instanceof AppCompatTextView) {
+            ((AppCompatTextView) textView).setTextFuture(get(note));
+        } else {
+            textView.setText(truncate(source(note), maxLines, null, 0));
+        }
+    }
+
+    // 占位行清空正文；还没用上的排版结果要一起丢掉，否则测量时会覆盖这里的文字
+    public void clear(TextView textView) {
+        if (textView instanceof AppCompatTextView) {
+            ((AppCompatTextView) textView).setTextFuture(null);
+        }
+        textView.setText("");
+    }
+
+    // 列表换上新数据或滚动后调用，先为可见的摘要、再由近及远为前后各 PREFETCH_MARGIN 条排版；
+    // 第一次绑定之前不知道排版参数，不做
+    public void prefetch(List<NoteSummary> notes, int first, int last) {
+        if (params == null || notes.isEmpty()) {
+            return;
+        }
+        first = Math.max(0, Math.min(first, notes.size() - 1));
+        last = Math.max(first, Math.min(last, notes.size() - 1));
+        for (int i = first; i <= last; i++) {
+            prefetch(notes.get(i));
+        }
+        for (int distance = 1; distance <= PREFETCH_MARGIN; distance++) {
+            if (last + distance < notes.size()) {
+                prefetch(notes.get(last + distance));
+            }
+            if (first - distance >= 0) {
+                prefetch(notes.get(first - distance));
+            }
+        }
+    }
+
+    private void prefetch(NoteSummary note) {
+        if (note != null) {
+            get(note);
+        }
+    }
+
+    private Future<PrecomputedTextCompat> get(NoteSummary note) {
+        Key key = new Key(note, width);
+        Entry entry = entries.get(key);
+        CharSequence source = source(note);
+        if (entry == null || !isCurrent(entry.source, source)) {
+            final PrecomputedTextCompat.Params params = this.params;
+            final TextPaint paint = this.paint;
+            final int maxLines = this.maxLines;
+            final int width = key.width;
+            entry = new Entry(source, executor.submit(() ->
+                    PrecomputedTextCompat.create(truncate(source, maxLines, paint, width), params)));
+            entries.put(key, entry);
+        }
+        return entry.text;
+    }
+
+    // 预览按文字比较；摘录的高亮随关键字变化，每次搜索生成的是新对象，按对象比较
+    private static boolean isCurrent(CharSequence cached, CharSequence source) {
+        return cached instanceof String ? cached.equals(source) : cached == source;
+    }
+
+    // 有搜索摘录时显示摘录，否则显示预览
+    private static CharSequence source(NoteSummary note) {
+        return note.getSnippet() != null ? note.getSnippet() : note.getPreview();
+    }
+
+    // maxLines 行以外的部分不会显示：数换行，width 大于 0 时还按行宽估计每段折成几行
+    // 按字符而不是按词折行，估计出的每行字数不少于实际，截掉的只会是显示不出来的部分
+    static CharSequence truncate(CharSequence text, int maxLines, TextPaint paint, int width) {
+        int lines = 0;
+        int start = 0;
+        while (true) {
+            int end = start;
+            while (end < text.length() && text.charAt(end) != '\n') {
+                end++;
+            }
+            if (paint == null || width <= 0) {
+                lines++;
+            } else {
+                // 逐行取能放下的字数，空段也占一行
+                int position = start;
+                do {
+                    position += Math.max(1, paint.breakText(text, position, end, true, width, null));
+                    lines++;
+                } while (position < end && lines < maxLines);
+                if (position < end) {
+                    return text.subSequence(0, position);
+                }
+            }
+            if (end == text.length()) {
+                return text;
+            }
+            if (lines >= maxLines) {
+                return text.subSequence(0, end);
+            }
+            start = end + 1;
+        }
+    }
+}
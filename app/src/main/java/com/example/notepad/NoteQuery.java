@@ -0,0 +1,348 @@
+package com.example.notepad;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// 搜索框的查询语法，解析成若干条件，条件之间是“与”，前面加 - 表示取反：
+//   普通关键字          hello 工作       按词匹配（见 NoteSearchIndex / NoteDatabase.toMatchQuery）
+//   "精确短语"          "会议 纪要"      标题或正文包含这段原文
+//   category:工作       分类（也可写作 分类:工作），值含空格时加引号
+//   priority:high       high/高/2、medium/中/1、low/低/0
+//   todo:open           open/未完成、done/已完成，只写 todo:any 表示所有待办
+//   before:2024-06-01   修改时间早于这一天 0 点；after: 为不早于这一天 0 点，也接受 2024/06/01、2024-06
+//   has:image           image/图片、audio/音频、video/视频、sticky/便签、reminder/提醒
+// 认不出的字段或无效的值按普通关键字处理
+// 条件由仓库选择执行方式：文件后端先用位图和倒排索引中最小的候选集，再逐条检查其余条件；
+// SQLite 后端转成 WHERE 子句交给查询优化器
+public class NoteQuery {
+    public static final int FIELD_TEXT = 0;
+    public static final int FIELD_PHRASE = 1;
+    public static final int FIELD_CATEGORY = 2;
+    public static final int FIELD_PRIORITY = 3;
+    public static final int FIELD_TODO = 4;
+    public static final int FIELD_BEFORE = 5;
+    public static final int FIELD_AFTER = 6;
+    public static final int FIELD_HAS = 7;
+
+    public static final int TODO_ANY = 0;
+    public static final int TODO_OPEN = 1;
+    public static final int TODO_DONE = 2;
+
+    // has: 的值，前几种与 NoteSummary 的标记相同，可以直接用位图
+    public static final int HAS_IMAGE = NoteSummary.FLAG_IMAGE;
+    public static final int HAS_AUDIO = NoteSummary.FLAG_AUDIO;
+    public static final int HAS_VIDEO = NoteSummary.FLAG_VIDEO;
+    public static final int HAS_STICKY = NoteSummary.FLAG_STICKY;
+    public static final int HAS_REMINDER = 1 << 16;
+
+    public static class Predicate {
+        public final int field;
+        public final boolean negated;
+        // 关键字、短语（已小写）或分类名
+        public final String text;
+        // 优先级、待办状态、时间（毫秒）或 HAS_*
+        public final long value;
+
+        Predicate(int field, boolean negated, String text, long value) {
+            this.field = field;
+            this.negated = negated;
+            this.text = text;
+            this.value = value;
+        }
+
+        // 关键字里有字母、数字或中日韩文字时可以交给全文索引
+        public boolean isIndexable() {
+            if (field != FIELD_TEXT && field != FIELD_PHRASE) {
+                return false;
+            }
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                if (Character.isLetterOrDigit(codePoint)) {
+                    return true;
+                }
+                i += Character.charCount(codePoint);
+            }
+            return false;
+        }
+
+        // 逐条检查一篇笔记，关键字和短语按子串匹配
+        public boolean matches(Note note) {
+            return matchesIgnoringNegation(note) != negated;
+        }
+
+        private boolean matchesIgnoringNegation(Note note) {
+            switch (field) {
+                case FIELD_CATEGORY:
+                    return note.getCategory().equals(text);
+                case FIELD_PRIORITY:
+                    return note.getPriority() == value;
+                case FIELD_TODO:
+                    if (!note.isTodo()) return false;
+                    if (value == TODO_OPEN) return !note.isCompleted();
+                    if (value == TODO_DONE) return note.isCompleted();
+                    return true;
+                case FIELD_BEFORE:
+                    return note.getModifiedDate().getTime() < value;
+                case FIELD_AFTER:
+                    return note.getModifiedDate().getTime() >= value;
+                case FIELD_HAS:
+                    if (value == HAS_REMINDER) return note.getReminderDate() != null;
+                    return (NoteSummary.flags(note) & value) != 0;
+                default:
+                    return (note.getTitle() != null && note.getTitle().toLowerCase().contains(text))
+                            || (note.getContent() != null && note.getContent().toLowerCase().contains(text));
+            }
+        }
+
+        // 检查代价：元数据条件先查，需要读取正文的关键字和短语放最后
+        int cost() {
+            return field == FIELD_TEXT || field == FIELD_PHRASE ? 1 : 0;
+        }
+    }
+
+    private final List<Predicate> predicates;
+
+    private NoteQuery(List<Predicate> predicates) {
+        this.predicates = predicates;
+    }
+
+    public List<Predicate> getPredicates() {
+        return predicates;
+    }
+
+    public boolean isEmpty() {
+        return predicates.isEmpty();
+    }
+
+    // 只有不取反的普通关键字，和旧版的关键字搜索一样（NoteQueryCache 只细化这种查询）
+    public boolean isPlainText() {
+        for (Predicate predicate : predicates) {
+            if (predicate.field != FIELD_TEXT || predicate.negated) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 不取反的关键字和短语（已小写），用于相关度打分和摘要高亮
+    public List<String> getPositiveTexts() {
+        List<String> texts = new ArrayList<>();
+        for (Predicate predicate : predicates) {
+            if (!predicate.negated && predicate.isIndexable()) {
+                texts.add(predicate.text);
+            }
+        }
+        return texts;
+    }
+
+    // 修改时间的上下界，没有时为 Long.MAX_VALUE / Long.MIN_VALUE
+    public long getBefore() {
+        long before = Long.MAX_VALUE;
+        for (Predicate predicate : predicates) {
+            if (predicate.field == FIELD_BEFORE && !predicate.negated) {
+                before = Math.min(before, predicate.value);
+            }
+        }
+        return before;
+    }
+
+    public long getAfter() {
+        long after = Long.MIN_VALUE;
+        for (Predicate predicate : predicates) {
+            if (predicate.field == FIELD_AFTER && !predicate.negated) {
+                after = Math.max(after, predicate.value);
+            }
+        }
+        return after;
+    }
+
+    // 按检查代价排序的副本
+    static List<Predicate> byCost(List<Predicate> predicates) {
+        List<Predicate> sorted = new ArrayList<>(predicates);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.cost(), b.cost()));
+        return sorted;
+    }
+
+    public static NoteQuery parse(String input) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (input == null) {
+            return new NoteQuery(predicates);
+        }
+        int length = input.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(input.charAt(i))) {
+                i++;
+            }
+            if (i >= length) {
+                break;
+            }
+            boolean negated = false;
+            if (input.charAt(i) == '-' && i + 1 < length && !Character.isWhitespace(input.charAt(i + 1))) {
+                negated = true;
+                i++;
+            }
+            if (input.charAt(i) == '"') {
+                int end = input.indexOf('"', i + 1);
+                String phrase = input.substring(i + 1, end >= 0 ? end : length);
+                i = end >= 0 ? end + 1 : length;
+                if (!phrase.trim().isEmpty()) {
+                    predicates.add(new Predicate(FIELD_PHRASE, negated, phrase.trim().toLowerCase(), 0));
+                }
+                continue;
+            }
+
+            int start = i;
+            while (i < length && !Character.isWhitespace(input.charAt(i)) && input.charAt(i) != ':') {
+                i++;
+            }
+            String word = input.substring(start, i);
+            if (i < length && input.charAt(i) == ':') {
+                String name = word;
+                i++;
+                String value;
+                if (i < length && input.charAt(i) == '"') {
+                    int end = input.indexOf('"', i + 1);
+                    value = input.substring(i + 1, end >= 0 ? end : length);
+                    i = end >= 0 ? end + 1 : length;
+                } else {
+                    int valueStart = i;
+                    while (i < length && !Character.isWhitespace(input.charAt(i))) {
+                        i++;
+                    }
+                    value = input.substring(valueStart, i);
+                }
+                Predicate predicate = field(name.toLowerCase(), value.trim(), negated);
+                if (predicate != null) {
+                    predicates.add(predicate);
+                    continue;
+                }
+                word = name + ":" + value;
+            } else {
+                while (i < length && !Character.isWhitespace(input.charAt(i))) {
+                    i++;
+                }
+                word = input.substring(start, i);
+            }
+            predicates.add(new Predicate(FIELD_TEXT, negated, word.toLowerCase(), 0));
+        }
+        return new NoteQuery(predicates);
+    }
+
+    // 认不出的字段或值返回 null
+    private static Predicate field(String name, String value, boolean negated) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        String lower = value.toLowerCase();
+        switch (name) {
+            case "category":
+            case "cat":
+            case "分类":
+                return new Predicate(FIELD_CATEGORY, negated, value, 0);
+            case "priority":
+            case "优先级":
+                int priority = parsePriority(lower);
+                return priority >= 0 ? new Predicate(FIELD_PRIORITY, negated, null, priority) : null;
+            case "todo":
+            case "待办":
+                int todo = parseTodo(lower);
+                return todo >= 0 ? new Predicate(FIELD_TODO, negated, null, todo) : null;
+            case "before":
+            case "之前":
+            case "after":
+            case "之后":
+                long time = parseDate(value);
+                if (time == Long.MIN_VALUE) {
+                    return null;
+                }
+                boolean before = name.equals("before") || name.equals("之前");
+                return new Predicate(before ? FIELD_BEFORE : FIELD_AFTER, negated, null, time);
+            case "has":
+            case "有":
+                int has = parseHas(lower);
+                return has != 0 ? new Predicate(FIELD_HAS, negated, null, has) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static int parsePriority(String value) {
+        switch (value) {
+            case "high":
+            case "高":
+            case "2":
+                return 2;
+            case "medium":
+            case "mid":
+            case "中":
+            case "1":
+                return 1;
+            case "low":
+            case "低":
+            case "0":
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    private static int parseTodo(String value) {
+        switch (value) {
+            case "open":
+            case "未完成":
+                return TODO_OPEN;
+            case "done":
+            case "已完成":
+                return TODO_DONE;
+            case "any":
+            case "yes":
+            case "全部":
+                return TODO_ANY;
+            default:
+                return -1;
+        }
+    }
+
+    private static int parseHas(String value) {
+        switch (value) {
+            case "image":
+            case "图片":
+                return HAS_IMAGE;
+            case "audio":
+            case "音频":
+                return HAS_AUDIO;
+            case "video":
+            case "视频":
+                return HAS_VIDEO;
+            case "sticky":
+            case "便签":
+                return HAS_STICKY;
+            case "reminder":
+            case "提醒":
+                return HAS_REMINDER;
+            default:
+                return 0;
+        }
+    }
+
+    // 按本地时区解析为当天（或当月第一天）0 点，无效时返回 Long.MIN_VALUE
+    private static long parseDate(String value) {
+        for (String pattern : new String[]{"yyyy-MM-dd", "yyyy/MM/dd", "yyyy-MM"}) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ROOT);
+            format.setLenient(false);
+            try {
+                if (value.length() == pattern.length()) {
+                    return format.parse(value).getTime();
+                }
+            } catch (ParseException e) {
+                // 试下一种格式
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.notepad;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 列表第一页（前 limit 条结果）的 LRU 缓存，键为（关键字、分类、只看待办、排序方式、页大小）
+// 关键字是在某个已缓存关键字后面继续输入得到的，新结果一定是旧结果的子集且顺序相同（开始按拼音匹配的除外，见 coversPinyin），
+// 这时在旧的第一页里细化（NoteRepository.narrowSummaries），不足一页的部分从旧页最后一条之后接着查；
+// 删字回退时直接命中之前缓存的结果；后面的页由 NotePager 直接向仓库查询，不缓存
+// 任何笔记变更都要调用 invalidate；可以在任意线程调用
+public class NoteQueryCache {
+    private static final int MAX_ENTRIES = 16;
+
+    private final Map<Key, List<NoteSummary>> entries = new LinkedHashMap<Key, List<NoteSummary>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<NoteSummary>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    // 每次失效加一；查询期间发生变更时结果不放入缓存
+    private long version;
+
+    // 返回的列表不可修改
+    public List<NoteSummary> query(NoteRepository repository, String category, boolean todoOnly,
+                                   String text, int sortMode, int limit) {
+        String query = text != null ? text : "";
+        Key key = new Key(query, category, todoOnly, sortMode, limit);
+        List<NoteSummary> base = null;
+        long startVersion;
+        synchronized (this) {
+            List<NoteSummary> cached = entries.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            startVersion = version;
+            // 从最长的前缀开始找可以细化的缓存结果；带字段、短语或取反的查询，
+            // 继续输入可能改变条件的含义（如 todo:open 还没输完时是普通关键字），不细化
+            // 按相关度排序时，多一个词会改变各条结果的得分和顺序，也不细化
+            NoteQuery parsed = NoteQuery.parse(query);
+            boolean refinable = sortMode != NoteRepository.SORT_BY_RELEVANCE && parsed.isPlainText();
+            for (int end = query.length() - 1; refinable && end >= 0 && base == null; end--) {
+                String prefix = query.substring(0, end);
+                if (isRefinable(prefix) && coversPinyin(NoteQuery.parse(prefix), parsed)) {
+                    base = entries.get(new Key(prefix, category, todoOnly, sortMode, limit));
+                }
+            }
+        }
+
+        List<NoteSummary> result;
+        if (base == null) {
+            result = repository.querySummaries(category, todoOnly, query, sortMode, null, limit);
+        } else {
+            // 旧页不足 limit 条说明它就是旧关键字的全部结果，细化后也是完整的
+            result = new ArrayList<>(repository.narrowSummaries(base, query));
+            if (base.size() >= limit && result.size() < limit) {
+                result.addAll(repository.querySummaries(category, todoOnly, query, sortMode,
+                        base.get(base.size() - 1), limit - result.size()));
+            }
+        }
+        result = Collections.unmodifiableList(result);
+        synchronized (this) {
+            if (version == startVersion) {
+                entries.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    public synchronized void invalidate() {
+        version++;
+        entries.clear();
+    }
+
+    // 空关键字或含有可检索字符（字母、数字、中日韩文字）的关键字，后面继续输入只会增加匹配条件；
+    // 只有标点的关键字按子串匹配，加上文字后改为按词匹配，结果不再是它的子集
+    private static boolean isRefinable(String prefix) {
+        if (prefix.isEmpty()) {
+            return true;
+        }
+        for (int i = 0; i < prefix.length(); ) {
+            int codePoint = prefix.codePointAt(i);
+            if (Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    // 两个以上字母的关键字还按拼音和首字母匹配（见 NotePinyin.isPinyinQuery），结果是文字和拼音两者的并集；
+    // 前缀里对应的词太短、没有按拼音查时（如 g 到 gz），新结果可能有前缀结果里没有的笔记
+    private static boolean coversPinyin(NoteQuery prefix, NoteQuery query) {
+        List<NoteQuery.Predicate> prefixWords = prefix.getPredicates();
+        List<NoteQuery.Predicate> queryWords = query.getPredicates();
+        for (int i = 0; i < prefixWords.size() && i < queryWords.size(); i++) {
+            if (NotePinyin.isPinyinQuery(queryWords.get(i).text) && !NotePinyin.isPinyinQuery(prefixWords.get(i).text)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Key {
+        final String query;
+        final String category;
+        final boolean todoOnly;
+        final int sortMode;
+        final int limit;
+
+        Key(String query, String category, boolean todoOnly, int sortMode, int limit) {
+            this.query = query;
+            this.category = category;
+            this.todoOnly = todoOnly;
+            this.sortMode = sortMode;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return query.equals(other.query)
+                    && (category != null ? category.equals(other.category) : other.category == null)
+                    && todoOnly == other.todoOnly
+                    && sortMode == other.sortMode
+                    && limit == other.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query.hashCode();
+            result = 31 * result + (category != null ? category.hashCode() : 0);
+            result = 31 * result + (todoOnly ? 1 : 0);
+            result = 31 * result + sortMode;
+            return 31 * result + limit;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.notepad;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 按设置选择笔记存储后端，整个应用共享同一个仓库实例
+public class NoteRepositories {
+    private static final String TAG = "NoteRepositories";
+    private static final String PREFS_NAME = "NotepadSettings";
+    private static final String KEY_BACKEND = "storage_backend";
+
+    public static final String BACKEND_FILE = "file";
+    public static final String BACKEND_SQLITE = "sqlite";
+
+    private static NoteRepository instance;
+    // 第一次打开仓库和切换后端的复制在这里执行，按提交顺序进行
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public interface Callback {
+        void onReady(NoteRepository repository);
+    }
+
+    // 第一次调用时会读取存储、建立索引，主线程上应使用 getAsync
+    public static synchronized NoteRepository get(Context context) {
+        if (instance == null) {
+            instance = create(context.getApplicationContext(), getBackend(context));
+        }
+        return instance;
+    }
+
+    // 在后台取得仓库，完成后在主线程回调
+    public static void getAsync(Context context, Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        executor.execute(() -> {
+            NoteRepository repository = get(appContext);
+            mainHandler.post(() -> callback.onReady(repository));
+        });
+    }
+
+    // 默认使用文件存储，只有在设置中选择后才切换到 SQLite
+    public static String getBackend(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        return prefs.getString(KEY_BACKEND, BACKEND_FILE);
+    }
+
+    // 切换后端：在后台把当前仓库中的全部笔记复制到新后端，完成后换上新仓库、关闭旧仓库，再在主线程回调 done
+    // 旧后端的文件保留不动；复制期间调用方应阻止新的修改（见 SettingsActivity）
+    public static void setBackend(Context context, String backend, Runnable done) {
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        executor.execute(() -> {
+            if (!backend.equals(getBackend(appContext))) {
+                switchTo(appContext, backend);
+            }
+            mainHandler.post(done);
+        });
+    }
+
+    private static void switchTo(Context context, String backend) {
+        NoteRepository previous = get(context);
+        previous.flush();
+        List<Note> notes = previous.getAll();
+
+        // 先写入新后端并关闭，再重新打开：新仓库里的笔记只引用它自己的存储，不再依赖旧后端
+        NoteRepository copy = create(context, backend);
+        copy.replaceAll(notes);
+        copy.close();
+        NoteRepository next = create(context, backend);
+
+        synchronized (NoteRepositories.class) {
+            context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                    .edit().putString(KEY_BACKEND, backend).commit();
+            instance = next;
+        }
+        previous.close();
+        Log.d(TAG, "Switched note storage to " + backend + ", copied " + notes.size() + " notes");
+    }
+
+    private static NoteRepository create(Context context, String backend) {
+        if (BACKEND_SQLITE.equals(backend)) {
+            return new SqliteNoteRepository(context);
+        }
+        return new FileNoteRepository(context);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.notepad;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// 笔记仓库：界面只通过它读写笔记，具体存储由 NoteRepositories 按设置选择
+// 除 flush 和 close 外的方法都可以在主线程调用，耗时的磁盘写入由实现放到写线程上
+public interface NoteRepository {
+    int SORT_BY_TIME = 0;
+    int SORT_BY_TITLE = 1;
+    int SORT_BY_CATEGORY = 2;
+    int SORT_BY_PRIORITY = 3;
+    // 按与关键字的相关度（BM25）排序，相关度相同或没有关键字时按时间
+    int SORT_BY_RELEVANCE = 4;
+
+    // 变更通知，在修改对查询可见之后于主线程回调（见 NoteObservers）
+    interface Observer {
+        // previousCategory 是保存前所在的分类，新增的笔记为 null；用于增量调整分类计数
+        void onNoteSaved(Note note, String previousCategory);
+
+        void onNoteDeleted(Note note);
+
+        // 整体替换后全部数据都可能变化
+        void onNotesReplaced();
+    }
+
+    // executeWithNotes 的任务，在写线程上执行
+    interface NotesTask {
+        void run(List<Note> notes);
+    }
+
+    // 返回独立的副本，修改后要通过 save 写回
+    Note getNote(long id);
+
+    boolean contains(long id);
+
+    // 返回副本，调用方可以随意修改
+    List<Note> getAll();
+
+    int size();
+
+    boolean isEmpty();
+
+    // 每个分类的笔记数，没有笔记的分类不出现
+    Map<String, Integer> getCategoryCounts();
+
+    // 列表界面用的摘要，不读取完整笔记；getSummaries 的顺序同 getAll
+    List<NoteSummary> getSummaries();
+
+    List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode);
+
+    // 键集分页：按 summaryComparator（相关度排序时为 relevanceComparator）的顺序，
+    // 取严格排在 after 之后的最多 limit 条，after 为 null 时从头开始
+    // after 只用来比较，不要求它仍在结果中，翻页期间的增删不会让结果重复或遗漏
+    List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode,
+                                     NoteSummary after, int limit);
+
+    // 在 candidates 中保留匹配关键字 text 的笔记，顺序不变；用于在上一次的结果上细化查询
+    List<NoteSummary> narrowSummaries(List<NoteSummary> candidates, String text);
+
+    // 语音搜索：alternatives 是识别器给出的全部候选（最可信的在前），按与它们的相似度从高到低排列，
+    // 容忍同音字、漏字和拼写错误
+    List<NoteSummary> fuzzySummaries(List<String> alternatives, String category, boolean todoOnly);
+
+    // 新增或按ID替换；仓库保存的是 note 的副本，之后再修改 note 不影响已保存的内容
+    void save(Note note);
+
+    void delete(long id);
+
+    // 整体替换（初始化示例笔记、从备份恢复、切换后端）；与 save 一样保存副本
+    void replaceAll(List<Note> notes);
+
+    void addObserver(Observer observer);
+
+    void removeObserver(Observer observer);
+
+    // 在后台执行其他磁盘任务（如备份），与笔记写入保持先后顺序
+    void execute(Runnable task);
+
+    // 同 execute，task 拿到的是此前所有修改生效后、之后的修改生效前的全部笔记（同 getAll）；
+    // 用于删除前的自动备份、导出、同步提醒等需要全部笔记的任务，主线程不读取笔记
+    void executeWithNotes(NotesTask task);
+
+    // 切到后台时调用，尽快把未写出的改动排队落盘
+    void flushAsync();
+
+    // 阻塞直到所有改动写入磁盘，只能在后台线程调用
+    void flush();
+
+    // 写出所有改动后停止写线程，之后不能再使用这个仓库；只能在后台线程调用（见 NoteRepositories.setBackend）
+    void close();
+
+    // 最后按ID区分，可以作为有序集合的比较器
+    static Comparator<NoteSummary> summaryComparator(int sortMode) {
+        return new Comparator<NoteSummary>() {
+            @Override
+            public int compare(NoteSummary n1, NoteSummary n2) {
+                int result;
+                switch (sortMode) {
+                    case SORT_BY_TITLE:
+                        // 比较缓存的排序键，只是一次字节比较
+                        result = n1.getTitleKey().compareTo(n2.getTitleKey());
+                        break;
+                    case SORT_BY_CATEGORY:
+                        result = n1.getCategory().compareToIgnoreCase(n2.getCategory());
+                        if (result == 0) result = n2.getModifiedDate().compareTo(n1.getModifiedDate());
+                        break;
+                    case SORT_BY_PRIORITY:
+                        result = Integer.compare(n2.getPriority(), n1.getPriority());
+                        if (result == 0) result = n2.getModifiedDate().compareTo(n1.getModifiedDate());
+                        break;
+                    default: // 按时间（默认）
+                        result = n2.getModifiedDate().compareTo(n1.getModifiedDate());
+                        break;
+                }
+                return result != 0 ? result : Long.compare(n1.getId(), n2.getId());
+            }
+        };
+    }
+
+    // 得分高的在前，得分相同（或都没有得分）按时间
+    static Comparator<NoteSummary> relevanceComparator(Map<Long, Float> scores) {
+        Comparator<NoteSummary> byTime = summaryComparator(SORT_BY_TIME);
+        return (n1, n2) -> {
+            Float s1 = scores.get(n1.getId());
+            Float s2 = scores.get(n2.getId());
+            int result = Float.compare(s2 != null ? s2 : 0, s1 != null ? s1 : 0);
+            return result != 0 ? result : byTime.compare(n1, n2);
+        };
+    }
+}
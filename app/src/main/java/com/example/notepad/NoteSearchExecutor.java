@@ -0,0 +1,81 @@
+package com.example.notepad;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 列表查询放到后台线程执行：输入关键字时去抖，新查询提交后旧查询的结果直接丢弃，
+// 结果在主线程一次性发布，界面不会看到过滤到一半的列表
+// submit 系列方法只能在主线程调用
+public class NoteSearchExecutor {
+    // 连续输入时只在停顿这么久之后查询一次
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    // 结果一般是摘要列表，主列表分页加载时是 NotePager.Pages
+    public interface Query<T> {
+        T run();
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 每提交一次查询加一，只有最新一次的结果会发布
+    private final AtomicLong generation = new AtomicLong();
+    private Runnable pending;
+
+    // 立即查询（切换分类、排序等）
+    public <T> void submit(Query<T> query, Callback<T> callback) {
+        schedule(query, callback, 0);
+    }
+
+    // 输入关键字时调用，DEBOUNCE_MILLIS 内的新输入会取代这次查询
+    public <T> void submitDebounced(Query<T> query, Callback<T> callback) {
+        schedule(query, callback, DEBOUNCE_MILLIS);
+    }
+
+    // 丢弃尚未发布的查询
+    public void cancel() {
+        generation.incrementAndGet();
+        if (pending != null) {
+            mainHandler.removeCallbacks(pending);
+            pending = null;
+        }
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private <T> void schedule(Query<T> query, Callback<T> callback, long delayMillis) {
+        cancel();
+        final long token = generation.get();
+        Runnable start = () -> {
+            pending = null;
+            executor.execute(() -> {
+                // 排队期间又有新查询提交，不必再执行
+                if (generation.get() != token) {
+                    return;
+                }
+                T result = query.run();
+                mainHandler.post(() -> {
+                    if (generation.get() == token) {
+                        callback.onResult(result);
+                    }
+                });
+            });
+        };
+        if (delayMillis > 0) {
+            pending = start;
+            mainHandler.postDelayed(start, delayMillis);
+        } else {
+            start.run();
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.example.notepad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// 文件后端的内存倒排索引：词 -> 按ID升序的笔记列表，随笔记的增删改增量更新
+// 分词：拉丁字母和数字按连续的词切分，查询时按词前缀匹配；中日韩文字切成单字和相邻两字（二元组），
+// 查询时用二元组求交集，只有一个字时用单字
+// 同时保存每篇笔记的词表、词频和长度，删除和修改时不需要旧正文；持久化的也是这份词表，加载时重建倒排表
+// 词频和长度用于 BM25 相关度打分，标题里的词按 TITLE_WEIGHT 倍计数
+// 不是线程安全的，由 FileNoteRepository 加锁
+public class NoteSearchIndex {
+    public static final byte[] MAGIC = {'N', 'I', 'D', 'X'};
+    private static final int FILE_VERSION = 1;
+    static final int TITLE_WEIGHT = 3;
+    // BM25 参数：词频饱和速度和长度归一化程度
+    private static final float BM25_K1 = 1.2f;
+    private static final float BM25_B = 0.75f;
+
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+    // 拉丁词的二元组索引，模糊匹配时找相近词
+    private final NoteFuzzy.TermIndex termIndex = new NoteFuzzy.TermIndex();
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // 全部笔记的长度之和，用于求平均长度
+    private long totalLength;
+
+    private static class Entry {
+        final long date;
+        final String[] terms;
+        final int[] counts;
+        final int length;
+
+        Entry(long date, String[] terms, int[] counts, int length) {
+            this.date = date;
+            this.terms = terms;
+            this.counts = counts;
+            this.length = length;
+        }
+    }
+
+    // 新增或重新索引一篇笔记
+    public void add(Note note) {
+        List<String> title = new ArrayList<>();
+        List<String> content = new ArrayList<>();
+        collectTerms(note.getTitle(), title, false);
+        collectTerms(note.getContent(), content, false);
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String term : title) {
+            Integer count = counts.get(term);
+            counts.put(term, (count != null ? count : 0) + TITLE_WEIGHT);
+        }
+        for (String term : content) {
+            Integer count = counts.get(term);
+            counts.put(term, (count != null ? count : 0) + 1);
+        }
+        put(note.getId(), note.getDate().getTime(), counts, title.size() * TITLE_WEIGHT + content.size());
+    }
+
+    public void remove(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        totalLength -= entry.length;
+        for (String term : entry.terms) {
+            Postings list = postings.get(term);
+            if (list != null && list.remove(id) && list.size == 0) {
+                postings.remove(term);
+                termIndex.remove(term);
+            }
+        }
+    }
+
+    public void clear() {
+        postings.clear();
+        termIndex.clear();
+        entries.clear();
+        totalLength = 0;
+    }
+
+    // 修改标题或正文都会刷新 date，date 相同说明索引中的词表仍然有效
+    public boolean isCurrent(Note note) {
+        Entry entry = entries.get(note.getId());
+        return entry != null && entry.date == note.getDate().getTime();
+    }
+
+    // 去掉不在 ids 中的笔记（加载后清理快照之后删除的笔记）
+    public void retainAll(Collection<Long> ids) {
+        List<Long> stale = new ArrayList<>();
+        for (Long id : entries.keySet()) {
+            if (!ids.contains(id)) {
+                stale.add(id);
+            }
+        }
+        for (Long id : stale) {
+            remove(id);
+        }
+    }
+
+    // 返回包含全部查询词的笔记ID（升序）；查询中没有可检索的词时返回 null，由调用方退回逐条匹配
+    public long[] search(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        collectTerms(query, terms, true);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        List<long[]> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            long[] ids = lookup(term);
+            if (ids.length == 0) {
+                return ids;
+            }
+            lists.add(ids);
+        }
+        // 从最短的列表开始求交集，中间结果只会越来越小
+        Collections.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        long[] result = lists.get(0);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    // BM25 相关度：查询词（分词方式同 search）在每篇笔记中的得分之和，没有命中任何词的笔记不在结果中
+    public Map<Long, Float> relevance(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        collectTerms(query, terms, true);
+        Map<Long, Float> scores = new HashMap<>();
+        if (entries.isEmpty()) {
+            return scores;
+        }
+        float averageLength = Math.max(1f, (float) totalLength / entries.size());
+        for (String term : terms) {
+            // 拉丁词按前缀匹配，同一篇笔记中所有以它开头的词的词频相加
+            Collection<Postings> lists;
+            if (isCjk(term.codePointAt(0))) {
+                Postings list = postings.get(term);
+                lists = list != null ? Collections.singletonList(list) : Collections.<Postings>emptyList();
+            } else {
+                lists = postings.subMap(term, term + Character.MAX_VALUE).values();
+            }
+            Map<Long, Integer> frequencies = new HashMap<>();
+            for (Postings list : lists) {
+                for (int i = 0; i < list.size; i++) {
+                    Integer previous = frequencies.get(list.ids[i]);
+                    frequencies.put(list.ids[i], (previous != null ? previous : 0) + list.counts[i]);
+                }
+            }
+            for (Map.Entry<Long, Integer> e : frequencies.entrySet()) {
+                float score = bm25(e.getValue(), frequencies.size(), entries.get(e.getKey()).length,
+                        averageLength, entries.size());
+                Float previous = scores.get(e.getKey());
+                scores.put(e.getKey(), (previous != null ? previous : 0) + score);
+            }
+        }
+        return scores;
+    }
+
+    // 一个词在一篇笔记中的 BM25 得分；SQLite 后端用 matchinfo 取到同样的统计量后也用它
+    static float bm25(int frequency, int documents, int length, float averageLength, int count) {
+        double idf = Math.log(1 + (count - documents + 0.5) / (documents + 0.5));
+        double norm = frequency + BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength);
+        return (float) (idf * frequency * (BM25_K1 + 1) / norm);
+    }
+
+    // 模糊匹配（语音搜索用）：返回得分不低于下限的笔记ID，得分高的在前，打分方式见 NoteFuzzy
+    // 中日韩文字按单字和二元组的重合程度打分，错一个同音字只影响一个单字和两个二元组；
+    // 拉丁词通过 termIndex 找（按前缀的）编辑距离不超过 1～2 的词，距离越大权重越低
+    public long[] fuzzySearch(List<String> alternatives) {
+        List<Map<Long, Float>> scores = new ArrayList<>(alternatives.size());
+        for (String alternative : alternatives) {
+            scores.add(fuzzyScores(alternative));
+        }
+        return NoteFuzzy.rank(scores);
+    }
+
+    private Map<Long, Float> fuzzyScores(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        collectTerms(text, terms, false);
+        List<Map<Long, Float>> matches = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            Map<String, Float> similar;
+            if (isCjk(term.codePointAt(0))) {
+                similar = postings.containsKey(term) ? Collections.singletonMap(term, 1f)
+                        : Collections.<String, Float>emptyMap();
+            } else {
+                similar = termIndex.similar(term);
+            }
+            // 同一个查询词命中多个相近词时只取最接近的一个
+            Map<Long, Float> best = new HashMap<>();
+            for (Map.Entry<String, Float> e : similar.entrySet()) {
+                Postings list = postings.get(e.getKey());
+                for (int i = 0; i < list.size; i++) {
+                    Float previous = best.get(list.ids[i]);
+                    if (previous == null || e.getValue() > previous) {
+                        best.put(list.ids[i], e.getValue());
+                    }
+                }
+            }
+            matches.add(best);
+        }
+        return NoteFuzzy.score(matches, entries.size());
+    }
+
+    private long[] lookup(String term) {
+        if (isCjk(term.codePointAt(0))) {
+            Postings list = postings.get(term);
+            return list != null ? list.toArray() : new long[0];
+        }
+        // 拉丁词按前缀匹配，合并所有以它开头的词
+        Collection<Postings> matches = postings.subMap(term, term + Character.MAX_VALUE).values();
+        if (matches.size() == 1) {
+            return matches.iterator().next().toArray();
+        }
+        int total = 0;
+        for (Postings list : matches) {
+            total += list.size;
+        }
+        long[] merged = new long[total];
+        int length = 0;
+        for (Postings list : matches) {
+            System.arraycopy(list.ids, 0, merged, length, list.size);
+            length += list.size;
+        }
+        Arrays.sort(merged);
+        return distinct(merged);
+    }
+
+    private void put(long id, long date, Map<String, Integer> counts, int length) {
+        remove(id);
+        String[] stored = new String[counts.size()];
+        int[] storedCounts = new int[counts.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            Postings list = postings.get(e.getKey());
+            if (list == null) {
+                list = new Postings(e.getKey());
+                postings.put(e.getKey(), list);
+                termIndex.add(list.term);
+            }
+            list.add(id, e.getValue());
+            // 共用倒排表里的键，每个词只保留一份字符串
+            stored[i] = list.term;
+            storedCounts[i++] = e.getValue();
+        }
+        entries.put(id, new Entry(date, stored, storedCounts, length));
+        totalLength += length;
+    }
+
+    // forQuery 为 true 时中日韩文字只取查询需要的词：两个字以上用二元组，单独一个字用单字
+    // terms 是 Set 时去重，是 List 时保留每次出现（用于计算词频）
+    static void collectTerms(String text, Collection<String> terms, boolean forQuery) {
+        if (text == null) {
+            return;
+        }
+        String lower = text.toLowerCase();
+        int length = lower.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = lower.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int start = i;
+                int count = 0;
+                int previous = -1;
+                while (i < length && isCjk(codePoint = lower.codePointAt(i))) {
+                    if (!forQuery) {
+                        terms.add(new String(Character.toChars(codePoint)));
+                    }
+                    if (previous >= 0) {
+                        terms.add(lower.substring(previous, i + Character.charCount(codePoint)));
+                    }
+                    previous = i;
+                    i += Character.charCount(codePoint);
+                    count++;
+                }
+                if (forQuery && count == 1) {
+                    terms.add(lower.substring(start, i));
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length && !isCjk(codePoint = lower.codePointAt(i))
+                        && Character.isLetterOrDigit(codePoint)) {
+                    i += Character.charCount(codePoint);
+                }
+                terms.add(lower.substring(start, i));
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+    }
+
+    static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int length = 0;
+        int j = 0;
+        for (int i = 0; i < a.length && j < b.length; i++) {
+            // 短列表逐个在长列表中向前查找
+            while (j < b.length && b[j] < a[i]) {
+                j++;
+            }
+            if (j < b.length && b[j] == a[i]) {
+                result[length++] = a[i];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    // 两个升序列表的并集
+    static long[] union(long[] a, long[] b) {
+        long[] result = new long[a.length + b.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            long next = j >= b.length || (i < a.length && a[i] <= b[j]) ? a[i++] : b[j++];
+            if (length == 0 || result[length - 1] != next) {
+                result[length++] = next;
+            }
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    static long[] distinct(long[] sorted) {
+        int length = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (length == 0 || sorted[length - 1] != sorted[i]) {
+                sorted[length++] = sorted[i];
+            }
+        }
+        return length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+    }
+
+    // 文件格式：魔数 + 版本 + 笔记数 + 每篇笔记（ID、date、长度、词数、每个词及词频）
+    public void write(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        NoteCodec.writeVarLong(out, FILE_VERSION);
+        NoteCodec.writeVarLong(out, entries.size());
+        for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            NoteCodec.writeVarLong(out, e.getKey());
+            NoteCodec.writeVarLong(out, entry.date);
+            NoteCodec.writeVarLong(out, entry.length);
+            NoteCodec.writeVarLong(out, entry.terms.length);
+            for (int t = 0; t < entry.terms.length; t++) {
+                NoteCodec.writeString(out, entry.terms[t]);
+                NoteCodec.writeVarLong(out, entry.counts[t]);
+            }
+        }
+    }
+
+    // 调用方需先用 NoteCodec.hasMagic 确认文件头
+    public static NoteSearchIndex read(InputStream in) throws IOException {
+        int version = (int) NoteCodec.readVarLong(in);
+        if (version < 1 || version > FILE_VERSION) {
+            throw new IOException("Unsupported index version: " + version);
+        }
+        NoteSearchIndex index = new NoteSearchIndex();
+        int count = (int) NoteCodec.readVarLong(in);
+        for (int i = 0; i < count; i++) {
+            long id = NoteCodec.readVarLong(in);
+            long date = NoteCodec.readVarLong(in);
+            int length = (int) NoteCodec.readVarLong(in);
+            int termCount = (int) NoteCodec.readVarLong(in);
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (int t = 0; t < termCount; t++) {
+                String term = NoteCodec.readString(in);
+                counts.put(term, (int) NoteCodec.readVarLong(in));
+            }
+            index.put(id, date, counts, length);
+        }
+        return index;
+    }
+
+    // 按ID升序的笔记列表；ID随创建时间递增，新笔记通常直接追加在末尾
+    private static class Postings {
+        final String term;
+        long[] ids = new long[2];
+        // 与 ids 对应的词频
+        int[] counts = new int[2];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+        }
+
+        void add(long id, int count) {
+            int position = size > 0 && ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0 && position < size) {
+                counts[position] = count;
+                return;
+            }
+            if (position < 0) {
+                position = -position - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            System.arraycopy(counts, position, counts, position + 1, size - position);
+            ids[position] = id;
+            counts[position] = count;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.notepad;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// 内存映射的笔记段文件：
+// [文件头][压缩字典][记录]...[定长索引][尾部]
+// 文件头 = 魔数(4) + 版本(4)
+// 压缩字典 = 字典魔数(4) + 字典ID(8) + 长度(4) + CRC(4) + 字典内容，长度为 0 表示没有字典
+// 记录 = 记录魔数(4) + 元数据长度(4) + 正文长度(4) + 元数据CRC(4) + 正文CRC(4) + 元数据 + 正文
+// 正文按 NoteCompression 的负载格式存放，长正文用本文件的字典压缩
+// 索引项 = ID(8) + 记录偏移(8)，按写入顺序排列
+// 尾部 = 笔记数(4) + 索引偏移(8) + 日志序号(8) + 字典基准压缩率(4) + 索引CRC(4) + 尾部魔数(4)
+// 字典在合并之间沿用（见 write），ID 相同的段文件之间用字典压缩的正文可以原样复制
+// 加载时只解码元数据，正文在真正读取时才从映射区域解码并校验
+// 尾部或索引损坏时逐条扫描记录抢救数据，只在损坏区域逐字节寻找下一条记录；文件头也损坏时由 salvage 扫描
+public class NoteSegment {
+    private static final String TAG = "NoteSegment";
+    private static final byte[] MAGIC = {'N', 'S', 'E', 'G'};
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int DICTIONARY_MAGIC = 0x4E444943; // "NDIC"
+    private static final int DICTIONARY_HEADER_SIZE = 20;
+    private static final int RECORD_MAGIC = 0x4E524543; // "NREC"
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int TRAILER_MAGIC = 0x4E454E44; // "NEND"
+    private static final int TRAILER_SIZE = 32;
+
+    private final MappedByteBuffer buffer;
+    private final long journalSeq;
+    private final List<Integer> recordOffsets;
+    private final boolean recovered;
+    // 尾部记录的字典基准压缩率，扫描抢救时为 0
+    private final int baseline;
+    private NoteCompression.Dictionary dictionary;
+
+    private NoteSegment(MappedByteBuffer buffer, long journalSeq, List<Integer> recordOffsets, boolean recovered,
+                        int baseline) {
+        this.buffer = buffer;
+        this.journalSeq = journalSeq;
+        this.recordOffsets = recordOffsets;
+        this.recovered = recovered;
+        this.baseline = baseline;
+    }
+
+    public static NoteSegment open(File file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        if (buffer.limit() < HEADER_SIZE) {
+            throw new IOException("Segment too short");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("Bad segment magic");
+            }
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported segment version: " + version);
+        }
+
+        int recordsStart = HEADER_SIZE;
+        if (hasDictionary(buffer)) {
+            recordsStart = HEADER_SIZE + DICTIONARY_HEADER_SIZE + buffer.getInt(HEADER_SIZE + 12);
+        }
+
+        NoteSegment segment = readIndex(buffer);
+        if (segment == null) {
+            Log.e(TAG, "Segment index damaged, scanning records: " + file.getName());
+            segment = scan(buffer, recordsStart);
+        }
+        segment.dictionary = readDictionary(buffer, file, segment.baseline);
+        return segment;
+    }
+
+    // open 失败（文件头损坏、版本不认识）时使用：不看文件头，从头逐条扫描记录
+    // 结果总是 isRecovered，字典完好时仍能解压用它压缩的正文
+    public static NoteSegment salvage(File file) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        NoteSegment segment = scan(buffer, 0);
+        segment.dictionary = readDictionary(buffer, file, 0);
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // 映射在通道关闭后依然有效，文件改名或删除后也一样
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static boolean hasDictionary(MappedByteBuffer buffer) {
+        if (buffer.limit() < HEADER_SIZE + DICTIONARY_HEADER_SIZE
+                || buffer.getInt(HEADER_SIZE) != DICTIONARY_MAGIC) {
+            return false;
+        }
+        int length = buffer.getInt(HEADER_SIZE + 12);
+        return length >= 0 && (long) HEADER_SIZE + DICTIONARY_HEADER_SIZE + length <= buffer.limit();
+    }
+
+    // 没有字典时返回 null；字典损坏只影响用它压缩的正文，元数据和未压缩的正文仍可读取
+    private static NoteCompression.Dictionary readDictionary(MappedByteBuffer buffer, File file, int baseline) {
+        if (!hasDictionary(buffer)) {
+            return null;
+        }
+        long id = buffer.getLong(HEADER_SIZE + 4);
+        int length = buffer.getInt(HEADER_SIZE + 12);
+        int dictionaryOffset = HEADER_SIZE + DICTIONARY_HEADER_SIZE;
+        if (Crc32c.compute(buffer, dictionaryOffset, length) != buffer.getInt(HEADER_SIZE + 16)) {
+            Log.e(TAG, "Compression dictionary damaged: " + file.getName());
+            return null;
+        }
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(dictionaryOffset);
+        view.get(bytes);
+        return new NoteCompression.Dictionary(id, bytes, baseline);
+    }
+
+    // 通过尾部和索引定位记录；尾部或索引校验失败时返回 null
+    private static NoteSegment readIndex(MappedByteBuffer buffer) {
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(limit - 4) != TRAILER_MAGIC) {
+            return null;
+        }
+        int trailer = limit - TRAILER_SIZE;
+        int count = buffer.getInt(trailer);
+        long indexOffset = buffer.getLong(trailer + 4);
+        long journalSeq = buffer.getLong(trailer + 12);
+        int baseline = buffer.getInt(trailer + 20);
+        int indexCrc = buffer.getInt(trailer + 24);
+        if (count < 0 || indexOffset < HEADER_SIZE
+                || indexOffset + (long) count * INDEX_ENTRY_SIZE != trailer) {
+            return null;
+        }
+        int checked = trailer + 24 - (int) indexOffset;
+        if (Crc32c.compute(buffer, (int) indexOffset, checked) != indexCrc) {
+            return null;
+        }
+
+        List<Integer> offsets = new ArrayList<>(count);
+        boolean damaged = false;
+        for (int i = 0; i < count; i++) {
+            long offset = buffer.getLong((int) indexOffset + i * INDEX_ENTRY_SIZE + 8);
+            if (offset >= HEADER_SIZE && offset < indexOffset && isRecord(buffer, (int) offset, (int) indexOffset)) {
+                offsets.add((int) offset);
+            } else {
+                damaged = true;
+            }
+        }
+        return new NoteSegment(buffer, journalSeq, offsets, damaged, baseline);
+    }
+
+    // 顺序扫描：合法记录整条跳过，遇到损坏区域逐字节寻找下一个记录魔数
+    private static NoteSegment scan(MappedByteBuffer buffer, int start) {
+        List<Integer> offsets = new ArrayList<>();
+        int limit = buffer.limit();
+        int position = start;
+        while (position + RECORD_HEADER_SIZE <= limit) {
+            if (isRecord(buffer, position, limit)) {
+                offsets.add(position);
+                position += RECORD_HEADER_SIZE + buffer.getInt(position + 4) + buffer.getInt(position + 8);
+            } else {
+                position++;
+            }
+        }
+        // 不知道快照覆盖到哪个日志，返回 0 让调用方按顺序重放全部现存日志
+        return new NoteSegment(buffer, 0, offsets, true, 0);
+    }
+
+    private static boolean isRecord(ByteBuffer buffer, int offset, int limit) {
+        if (offset + RECORD_HEADER_SIZE > limit || buffer.getInt(offset) != RECORD_MAGIC) {
+            return false;
+        }
+        int metaLength = buffer.getInt(offset + 4);
+        int contentLength = buffer.getInt(offset + 8);
+        if (metaLength <= 0 || contentLength < 0
+                || (long) offset + RECORD_HEADER_SIZE + metaLength + contentLength > limit) {
+            return false;
+        }
+        return Crc32c.compute(buffer, offset + RECORD_HEADER_SIZE, metaLength) == buffer.getInt(offset + 12);
+    }
+
+    // 写入到 file 并 fsync；调用方负责先写临时文件再改名，避免覆盖仍被映射的旧段文件
+    // journalSeq 为这份快照之后仍需重放的第一个日志序号
+    // 沿用 previous（上一个段文件的字典），没有时才用这批笔记训练；沿用字典时正文没改过的笔记
+    // 直接复制原来的压缩数据，不解压也不重新压缩。写完发现长正文的压缩率比字典的基准差出太多时，
+    // 说明笔记内容已经偏离字典，重新训练后重写一遍
+    public static void write(File file, List<Note> notes, long journalSeq,
+                             NoteCompression.Dictionary previous) throws IOException {
+        NoteCompression.Dictionary dictionary = previous != null ? previous : NoteCompression.train(notes, null);
+        int ratio = writeRecords(file, notes, journalSeq, dictionary);
+        if (previous != null && NoteCompression.hasDrifted(previous, ratio)) {
+            Log.d(TAG, "Compression ratio drifted to " + ratio + "/1000 from " + previous.baseline + ", retraining");
+            writeRecords(file, notes, journalSeq, NoteCompression.train(notes, previous));
+        }
+    }
+
+    // 返回长正文的压缩率（千分比，见 NoteCompression.ratio）
+    private static int writeRecords(File file, List<Note> notes, long journalSeq,
+                                    NoteCompression.Dictionary dictionary) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream(notes.size() * INDEX_ENTRY_SIZE + TRAILER_SIZE);
+        DataOutputStream indexOut = new DataOutputStream(index);
+        long rawBytes = 0;
+        long compressedBytes = 0;
+
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            byte[] dictionaryBytes = dictionary != null ? dictionary.bytes : new byte[0];
+            out.writeInt(DICTIONARY_MAGIC);
+            out.writeLong(dictionary != null ? dictionary.id : 0);
+            out.writeInt(dictionaryBytes.length);
+            out.writeInt(Crc32c.compute(dictionaryBytes));
+            out.write(dictionaryBytes);
+
+            long position = HEADER_SIZE + DICTIONARY_HEADER_SIZE + dictionaryBytes.length;
+            for (Note note : notes) {
+                byte[] meta = NoteCodec.encodeNote(note, false);
+                MappedContent damaged = damagedContent(note);
+                byte[] content;
+                int contentCrc;
+                if (damaged != null) {
+                    // 损坏的正文原样复制，保留原来的 CRC，不当作有效正文重写；之后读取或抢救时仍能发现
+                    content = damaged.payload();
+                    contentCrc = damaged.crc;
+                } else {
+                    content = encodeContent(note, dictionary);
+                    contentCrc = Crc32c.compute(content);
+                    long rawLength = NoteCompression.rawLength(content);
+                    if (rawLength >= NoteCompression.THRESHOLD) {
+                        rawBytes += rawLength;
+                        compressedBytes += content.length;
+                    }
+                }
+                out.writeInt(RECORD_MAGIC);
+                out.writeInt(meta.length);
+                out.writeInt(content.length);
+                out.writeInt(Crc32c.compute(meta));
+                out.writeInt(contentCrc);
+                out.write(meta);
+                out.write(content);
+
+                indexOut.writeLong(note.getId());
+                indexOut.writeLong(position);
+                position += RECORD_HEADER_SIZE + meta.length + content.length;
+            }
+
+            int ratio = NoteCompression.ratio(compressedBytes, rawBytes);
+            indexOut.writeInt(notes.size());
+            indexOut.writeLong(position);
+            indexOut.writeLong(journalSeq);
+            // 字典第一次使用时记下基准，之后沿用时保持不变
+            indexOut.writeInt(dictionary == null ? 0 : dictionary.baseline > 0 ? dictionary.baseline : ratio);
+            byte[] indexBytes = index.toByteArray();
+            out.write(indexBytes);
+            out.writeInt(Crc32c.compute(indexBytes));
+            out.writeInt(TRAILER_MAGIC);
+            out.flush();
+            fos.getFD().sync();
+            return ratio;
+        } finally {
+            fos.close();
+        }
+    }
+
+    // 正文还是从段文件映射读出的原样、但校验失败或无法解码时返回它的加载器，否则返回 null
+    private static MappedContent damagedContent(Note note) {
+        Note.ContentLoader loader = note.getContentLoader();
+        if (loader instanceof MappedContent && !((MappedContent) loader).isReadable()) {
+            return (MappedContent) loader;
+        }
+        return null;
+    }
+
+    // 正文还是从段文件映射读出的原样时，能复用就直接复制原来的负载
+    private static byte[] encodeContent(Note note, NoteCompression.Dictionary dictionary) {
+        Note.ContentLoader loader = note.getContentLoader();
+        if (loader instanceof MappedContent) {
+            byte[] payload = ((MappedContent) loader).reusablePayload(dictionary);
+            if (payload != null) {
+                return payload;
+            }
+        }
+        return NoteCompression.encode(note.getContent(), dictionary != null ? dictionary.bytes : null);
+    }
+
+    public int size() {
+        return recordOffsets.size();
+    }
+
+    public long getJournalSeq() {
+        return journalSeq;
+    }
+
+    // 没有字典或字典损坏时为 null；合并时传给 write 沿用
+    public NoteCompression.Dictionary getDictionary() {
+        return dictionary;
+    }
+
+    // 是否经过了抢救（有记录丢失或索引失效）
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    // 解码所有笔记的元数据，正文挂上延迟加载器
+    public List<Note> readAll() {
+        List<Note> notes = new ArrayList<>(recordOffsets.size());
+        for (int offset : recordOffsets) {
+            try {
+                notes.add(read(offset));
+            } catch (IOException e) {
+                Log.e(TAG, "Skipping damaged record at " + offset + ": " + e.getMessage());
+            }
+        }
+        return notes;
+    }
+
+    private Note read(int offset) throws IOException {
+        int metaOffset = offset + RECORD_HEADER_SIZE;
+        int metaLength = buffer.getInt(offset + 4);
+        int contentLength = buffer.getInt(offset + 8);
+        int contentCrc = buffer.getInt(offset + 16);
+
+        byte[] meta = new byte[metaLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(metaOffset);
+        view.get(meta);
+        Note note = NoteCodec.decodeNote(meta);
+        note.setContentLoader(new MappedContent(buffer, metaOffset + metaLength, contentLength, contentCrc, dictionary));
+        return note;
+    }
+
+    private static class MappedContent implements Note.ContentLoader {
+        private final MappedByteBuffer buffer;
+        private final int offset;
+        private final int length;
+        private final int crc;
+        private final NoteCompression.Dictionary dictionary;
+
+        MappedContent(MappedByteBuffer buffer, int offset, int length, int crc, NoteCompression.Dictionary dictionary) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.dictionary = dictionary;
+        }
+
+        private byte[] payload() {
+            byte[] bytes = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset);
+            view.get(bytes);
+            return bytes;
+        }
+
+        // 校验通过，并且不依赖字典或本段的字典完好
+        boolean isReadable() {
+            return isReadable(payload());
+        }
+
+        private boolean isReadable(byte[] bytes) {
+            return Crc32c.compute(bytes) == crc
+                    && NoteCompression.isReusable(bytes, dictionary != null ? dictionary.id : 0, dictionary);
+        }
+
+        // 不依赖字典或字典相同时返回原负载，否则返回 null 由调用方重新编码；
+        // 调用方已经用 isReadable 排除了损坏的正文
+        byte[] reusablePayload(NoteCompression.Dictionary target) {
+            byte[] bytes = payload();
+            return NoteCompression.isReusable(bytes, dictionary != null ? dictionary.id : 0, target) ? bytes : null;
+        }
+
+        @Override
+        public String load() {
+            byte[] bytes = payload();
+            if (!isReadable(bytes)) {
+                // 损坏的正文不当作有效内容返回，合并时由 write 原样保留；元数据不受影响
+                Log.e(TAG, "Content damaged at " + offset);
+                return "";
+            }
+            // 压缩的正文在这里才解压，解压结果由 Note 以软引用缓存
+            try {
+                return NoteCompression.decode(bytes, dictionary != null ? dictionary.bytes : null);
+            } catch (IOException e) {
+                Log.e(TAG, "Error decoding content at " + offset + ": " + e.getMessage());
+                return "";
+            }
+        }
+    }
+}
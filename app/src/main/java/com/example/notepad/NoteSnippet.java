@@ -0,0 +1,142 @@
+package com.example.notepad;
+
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 搜索结果的正文摘录：在正文中找出命中不同关键字最多的一段，关键字加背景色高亮
+// 需要读取完整正文，只在后台线程调用；列表按页（NotePager）读取，每读一页调用一次，
+// 每次只处理这批结果里排在前面的 MAX_SNIPPETS 条，更靠后的仍显示预览；命中只在标题或拼音里的笔记也显示预览
+public class NoteSnippet {
+    static final int MAX_SNIPPETS = 100;
+    // 摘录的长度（字符），以及第一个命中之前保留的上下文
+    static final int LENGTH = 100;
+    private static final int CONTEXT = 20;
+    // 一篇笔记最多记录这么多处命中，很长的正文不会逐处比较
+    private static final int MAX_HITS = 256;
+    private static final int HIGHLIGHT_COLOR = 0x66FFC107; // 半透明琥珀色
+    private static final String ELLIPSIS = "…";
+
+    // 返回的列表是副本，带摘录的摘要也是副本，查询缓存里的结果不受影响
+    public static List<NoteSummary> attach(NoteRepository repository, List<NoteSummary> results, String query) {
+        List<String> terms = NoteQuery.parse(query).getPositiveTexts();
+        if (terms.isEmpty() || results.isEmpty()) {
+            return results;
+        }
+        List<NoteSummary> attached = new ArrayList<>(results);
+        for (int i = 0; i < attached.size() && i < MAX_SNIPPETS; i++) {
+            NoteSummary summary = attached.get(i);
+            Note note = repository.getNote(summary.getId());
+            if (note == null) {
+                continue;
+            }
+            CharSequence snippet = extract(note.getContent(), terms);
+            if (snippet != null) {
+                attached.set(i, summary.withSnippet(snippet));
+            }
+        }
+        return attached;
+    }
+
+    // terms 已小写；没有命中时返回 null
+    static CharSequence extract(String content, List<String> terms) {
+        Excerpt excerpt = excerpt(content, terms);
+        if (excerpt == null) {
+            return null;
+        }
+        SpannableString snippet = new SpannableString(excerpt.text);
+        for (int[] range : excerpt.highlights) {
+            snippet.setSpan(new BackgroundColorSpan(HIGHLIGHT_COLOR), range[0], range[1],
+                    Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        return snippet;
+    }
+
+    // 摘录的文字和其中要高亮的范围，与 Spannable 分开，单元测试不需要 Android 的实现
+    static class Excerpt {
+        final String text;
+        // 每项为 {起, 止}，按位置排列
+        final List<int[]> highlights;
+
+        Excerpt(String text, List<int[]> highlights) {
+            this.text = text;
+            this.highlights = highlights;
+        }
+    }
+
+    static Excerpt excerpt(String content, List<String> terms) {
+        if (content == null || content.isEmpty()) {
+            return null;
+        }
+        String lower = content.toLowerCase();
+        // 个别字符小写后长度会变，位置对不上，这种正文不生成摘录
+        if (lower.length() != content.length()) {
+            return null;
+        }
+
+        // 所有命中按位置排序，每处记下起止位置和关键字序号
+        List<int[]> hits = new ArrayList<>();
+        for (int t = 0; t < terms.size(); t++) {
+            String term = terms.get(t);
+            // 每个关键字平分名额，常见词不会挤掉其他关键字
+            int limit = hits.size() + Math.max(1, MAX_HITS / terms.size());
+            for (int from = lower.indexOf(term); from >= 0 && hits.size() < limit;
+                 from = lower.indexOf(term, from + term.length())) {
+                hits.add(new int[]{from, from + term.length(), t});
+            }
+        }
+        if (hits.isEmpty()) {
+            return null;
+        }
+        int[][] sorted = hits.toArray(new int[0][]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a[0], b[0]));
+
+        // 滑动窗口：摘录从窗口第一个命中之前 CONTEXT 个字符开始，窗口内的命中都落在其后 LENGTH - CONTEXT 个字符内，
+        // 才能完整出现在摘录里；取不同关键字最多（相同时取最靠前）的窗口
+        int[] counts = new int[terms.size()];
+        int distinct = 0;
+        int best = 0;
+        int bestDistinct = 0;
+        for (int left = 0, right = 0; right < sorted.length; right++) {
+            if (counts[sorted[right][2]]++ == 0) {
+                distinct++;
+            }
+            while (left < right && sorted[right][1] - sorted[left][0] > LENGTH - CONTEXT) {
+                if (--counts[sorted[left][2]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            if (distinct > bestDistinct) {
+                bestDistinct = distinct;
+                best = left;
+            }
+        }
+
+        int start = Math.max(0, sorted[best][0] - CONTEXT);
+        int end = Math.min(content.length(), start + LENGTH);
+        // 不把代理对截成两半
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start--;
+        }
+        if (end < content.length() && Character.isLowSurrogate(content.charAt(end))) {
+            end++;
+        }
+        String prefix = start > 0 ? ELLIPSIS : "";
+        // 换行换成空格，长度不变，高亮位置不用调整
+        String text = prefix + content.substring(start, end).replace('\n', ' ')
+                + (end < content.length() ? ELLIPSIS : "");
+        List<int[]> highlights = new ArrayList<>();
+        for (int[] hit : sorted) {
+            if (hit[0] >= start && hit[0] < end) {
+                highlights.add(new int[]{hit[0] - start + prefix.length(),
+                        Math.min(hit[1], end) - start + prefix.length()});
+            }
+        }
+        return new Excerpt(text, highlights);
+    }
+}
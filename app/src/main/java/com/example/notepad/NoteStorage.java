@@ -3,70 +3,411 @@ package com.example.notepad;
 import android.content.Context;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NoteStorage {
-    private static final String FILE_NAME = "notes.dat";
+    private static final String FILE_NAME = "notes.seg";
+    private static final String TEMP_FILE_NAME = "notes.seg.tmp";
+    // 与快照一起写出的列表摘要和搜索索引，只是缓存：缺失或过期时由调用方从笔记重新生成
+    private static final String SUMMARY_FILE_NAME = "notes.sum";
+    private static final String INDEX_FILE_NAME = "notes.idx";
+    // 旧版 Java 序列化的快照，首次加载时迁移到 FILE_NAME 后删除
+    private static final String LEGACY_FILE_NAME = "notes.dat";
+    // 日志按序号分文件：notes.journal.<序号>，快照尾部记录它之后需要重放的第一个序号
+    private static final String JOURNAL_PREFIX = "notes.journal.";
+    // 读不懂或经过抢救的快照改名为 notes.seg.bad.<时间>，留作人工恢复，不会被覆盖或删除
+    private static final String QUARANTINE_PREFIX = "notes.seg.bad.";
+    private static final long COMPACT_THRESHOLD = 256 * 1024;
     private static final String TAG = "NoteStorage";
 
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static final Object JOURNAL_LOCK = new Object();
+    private static final AtomicBoolean compacting = new AtomicBoolean(false);
+    private static final ExecutorService compactExecutor = Executors.newSingleThreadExecutor();
+    // 当前写入的日志序号，-1 表示尚未从磁盘确定；受 JOURNAL_LOCK 保护
+    private static long currentSeq = -1;
+    // 损坏的快照没能改名隔离：之后不再写快照，免得覆盖它；日志照常追加，数据不丢
+    private static volatile boolean snapshotBlocked = false;
+
+    // 整体写入快照并清空日志，用于首次初始化和从备份恢复
     public static void saveNotes(Context context, List<Note> notes) {
-        FileOutputStream fos = null;
-        ObjectOutputStream oos = null;
+        synchronized (SNAPSHOT_LOCK) {
+            long merged = rotateJournal(context);
+            // 沿用现有快照的压缩字典
+            NoteSegment current = openSnapshot(context);
+            // 快照写入成功前旧日志都保留，中途崩溃时仍按旧快照 + 日志恢复
+            if (writeSnapshot(context, notes, merged + 1, current != null ? current.getDictionary() : null)) {
+                deleteJournals(context, merged);
+            }
+        }
+    }
 
-        try {
-            fos = context.openFileOutput(FILE_NAME, Context.MODE_PRIVATE);
-            oos = new ObjectOutputStream(fos);
-            oos.writeObject(notes);
-            Log.d(TAG, "Notes saved successfully");
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving notes: " + e.getMessage());
-        } finally {
+    // 把一批新增/修改/删除（值为 null）追加到日志，写入量只与改动的笔记有关
+    public static void saveChanges(Context context, Map<Long, Note> changes) {
+        synchronized (JOURNAL_LOCK) {
             try {
-                if (oos != null) {
-                    oos.close();
+                ensureJournalSeqLocked(context);
+                journal(context, currentSeq).appendAll(changes);
+            } catch (IOException e) {
+                Log.e(TAG, "Error appending changes: " + e.getMessage());
+            }
+        }
+        compactIfNeeded(context);
+    }
+
+    public static List<Note> loadNotes(Context context) {
+        synchronized (SNAPSHOT_LOCK) {
+            synchronized (JOURNAL_LOCK) {
+                migrateLegacySnapshot(context);
+                LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+                NoteSegment segment = openSnapshot(context);
+                long snapshotSeq = 0;
+                if (segment != null) {
+                    for (Note note : segment.readAll()) {
+                        notesById.put(note.getId(), note);
+                    }
+                    snapshotSeq = segment.getJournalSeq();
+                }
+
+                int replayed = 0;
+                long lastSeq = snapshotSeq;
+                for (long seq : journalSeqs(context)) {
+                    if (seq < snapshotSeq) {
+                        // 已经并入快照，只是上次删除前被中断
+                        journal(context, seq).delete();
+                        continue;
+                    }
+                    replayed += journal(context, seq).replay(notesById);
+                    lastSeq = seq;
+                }
+                currentSeq = lastSeq;
+
+                List<Note> notes = new ArrayList<>(notesById.values());
+                boolean recovered = segment != null && segment.isRecovered();
+                if (recovered) {
+                    // 抢救出的数据立即写成新快照，之后不再依赖损坏的文件
+                    long merged = currentSeq++;
+                    if (writeSnapshot(context, notes, merged + 1, segment.getDictionary())) {
+                        deleteJournals(context, merged);
+                    }
+                }
+                Log.d(TAG, "Notes loaded successfully, replayed " + replayed + " journal records"
+                        + (recovered ? " (snapshot recovered)" : ""));
+                return notes;
+            }
+        }
+    }
+
+    private static void compactIfNeeded(Context context) {
+        long size;
+        synchronized (JOURNAL_LOCK) {
+            size = journal(context, currentSeq).size();
+        }
+        if (size < COMPACT_THRESHOLD || snapshotBlocked || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        compactExecutor.execute(() -> {
+            try {
+                compact(appContext);
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    // 在后台把日志合并进快照：先切换到新序号的日志，合并期间的修改写入新日志
+    private static void compact(Context context) {
+        synchronized (SNAPSHOT_LOCK) {
+            long merged = rotateJournal(context);
+
+            LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+            NoteSegment segment = openSnapshot(context);
+            long snapshotSeq = 0;
+            if (segment != null) {
+                for (Note note : segment.readAll()) {
+                    notesById.put(note.getId(), note);
                 }
-                if (fos != null) {
-                    fos.close();
+                snapshotSeq = segment.getJournalSeq();
+            }
+            for (long seq : journalSeqs(context)) {
+                if (seq >= snapshotSeq && seq <= merged) {
+                    journal(context, seq).replay(notesById);
                 }
+            }
+
+            NoteCompression.Dictionary dictionary = segment != null ? segment.getDictionary() : null;
+            if (writeSnapshot(context, new ArrayList<>(notesById.values()), merged + 1, dictionary)) {
+                deleteJournals(context, merged);
+                Log.d(TAG, "Journal compacted into snapshot");
+            }
+        }
+    }
+
+    // 之后的修改写入下一个序号的日志，返回切换前的序号
+    private static long rotateJournal(Context context) {
+        synchronized (JOURNAL_LOCK) {
+            ensureJournalSeqLocked(context);
+            return currentSeq++;
+        }
+    }
+
+    private static void ensureJournalSeqLocked(Context context) {
+        if (currentSeq >= 0) {
+            return;
+        }
+        // 只取序号，不做抢救和隔离（那些由持有 SNAPSHOT_LOCK 的加载和合并完成）
+        long seq = 0;
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (file.exists()) {
+            try {
+                seq = NoteSegment.open(file).getJournalSeq();
             } catch (IOException e) {
-                Log.e(TAG, "Error closing streams: " + e.getMessage());
+                Log.e(TAG, "Error reading snapshot journal sequence: " + e.getMessage());
             }
         }
+        for (long existing : journalSeqs(context)) {
+            seq = Math.max(seq, existing);
+        }
+        currentSeq = seq;
     }
 
-    public static List<Note> loadNotes(Context context) {
-        FileInputStream fis = null;
-        ObjectInputStream ois = null;
-        List<Note> notes = null;
+    // 删除序号不超过 upTo 的日志
+    private static void deleteJournals(Context context, long upTo) {
+        synchronized (JOURNAL_LOCK) {
+            for (long seq : journalSeqs(context)) {
+                if (seq <= upTo) {
+                    journal(context, seq).delete();
+                }
+            }
+        }
+    }
+
+    // 按序号升序列出现存的日志
+    private static List<Long> journalSeqs(Context context) {
+        List<Long> seqs = new ArrayList<>();
+        String[] names = context.getFilesDir().list();
+        if (names == null) {
+            return seqs;
+        }
+        for (String name : names) {
+            if (name.startsWith(JOURNAL_PREFIX)) {
+                try {
+                    seqs.add(Long.parseLong(name.substring(JOURNAL_PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // 不是本程序写的文件
+                }
+            }
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+
+    private static NoteJournal journal(Context context, long seq) {
+        return new NoteJournal(new File(context.getFilesDir(), JOURNAL_PREFIX + seq));
+    }
 
+    // 一次性迁移：读出旧版快照，按段文件格式写入后删除旧文件
+    private static void migrateLegacySnapshot(Context context) {
+        File legacyFile = new File(context.getFilesDir(), LEGACY_FILE_NAME);
+        if (!legacyFile.exists()) {
+            return;
+        }
+        if (new File(context.getFilesDir(), FILE_NAME).exists()) {
+            legacyFile.delete();
+            return;
+        }
+
+        ObjectInputStream is = null;
         try {
-            fis = context.openFileInput(FILE_NAME);
-            ois = new ObjectInputStream(fis);
-            notes = (List<Note>) ois.readObject();
-            Log.d(TAG, "Notes loaded successfully");
+            is = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyFile)));
+            List<Note> notes = (List<Note>) is.readObject();
+            for (Note note : notes) {
+                // 旧版数据没有ID，迁移时补发，保证之后的日志记录能对上
+                note.ensureId();
+            }
+            // 旧版快照之后的日志都要重放，序号从 0 开始
+            if (writeSnapshot(context, notes, 0, null)) {
+                legacyFile.delete();
+                Log.d(TAG, "Migrated " + notes.size() + " notes from legacy format");
+            }
         } catch (IOException | ClassNotFoundException e) {
-            Log.e(TAG, "Error loading notes: " + e.getMessage());
-            // 如果加载失败，返回一个空列表
-            notes = new ArrayList<>();
+            Log.e(TAG, "Error migrating legacy notes: " + e.getMessage());
         } finally {
             try {
-                if (ois != null) {
-                    ois.close();
-                }
-                if (fis != null) {
-                    fis.close();
+                if (is != null) {
+                    is.close();
                 }
             } catch (IOException e) {
                 Log.e(TAG, "Error closing streams: " + e.getMessage());
             }
         }
+    }
 
-        return notes;
+    // 先写临时文件并 fsync 再改名：改名是原子的，崩溃后看到的要么是旧快照要么是完整的新快照
+    // 旧段文件也可能仍被映射着，不能原地覆盖
+    // dictionary 为沿用的压缩字典（见 NoteSegment.write）
+    private static boolean writeSnapshot(Context context, List<Note> notes, long journalSeq,
+                                         NoteCompression.Dictionary dictionary) {
+        if (snapshotBlocked) {
+            Log.e(TAG, "Damaged snapshot could not be moved aside, not overwriting it");
+            return false;
+        }
+        File tempFile = new File(context.getFilesDir(), TEMP_FILE_NAME);
+        try {
+            NoteSegment.write(tempFile, notes, journalSeq, dictionary);
+            if (!tempFile.renameTo(new File(context.getFilesDir(), FILE_NAME))) {
+                throw new IOException("Rename failed");
+            }
+            Log.d(TAG, "Notes saved successfully");
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving notes: " + e.getMessage());
+            tempFile.delete();
+            return false;
+        }
+        // 在上次快照的摘要和索引上更新，只有之后改过的笔记需要读取正文
+        Map<Long, NoteSummary> stored = loadSummaries(context);
+        NoteSearchIndex index = loadSearchIndex(context);
+        List<NoteSummary> summaries = new ArrayList<>(notes.size());
+        Set<Long> ids = new HashSet<>();
+        for (Note note : notes) {
+            summaries.add(NoteSummary.of(note, stored.get(note.getId())));
+            if (!index.isCurrent(note)) {
+                index.add(note);
+            }
+            ids.add(note.getId());
+        }
+        index.retainAll(ids);
+        writeCache(context, SUMMARY_FILE_NAME, os -> NoteCodec.writeSummaries(os, summaries));
+        writeCache(context, INDEX_FILE_NAME, index::write);
+        return true;
+    }
+
+    private interface CacheWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    // 缓存文件写失败不影响快照本身，下次加载时重新生成
+    private static void writeCache(Context context, String name, CacheWriter writer) {
+        File tempFile = new File(context.getFilesDir(), name + ".tmp");
+        try {
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
+            try {
+                writer.write(os);
+            } finally {
+                os.close();
+            }
+            if (!tempFile.renameTo(new File(context.getFilesDir(), name))) {
+                throw new IOException("Rename failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving " + name + ": " + e.getMessage());
+            tempFile.delete();
+        }
+    }
+
+    // 读取上次快照时的搜索索引；没有或损坏时返回空索引
+    public static NoteSearchIndex loadSearchIndex(Context context) {
+        File file = new File(context.getFilesDir(), INDEX_FILE_NAME);
+        if (!file.exists()) {
+            return new NoteSearchIndex();
+        }
+        try {
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            try {
+                if (!NoteCodec.hasMagic(is, NoteSearchIndex.MAGIC)) {
+                    throw new IOException("Unknown index format");
+                }
+                return NoteSearchIndex.read(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading search index: " + e.getMessage());
+            return new NoteSearchIndex();
+        }
+    }
+
+    // 读取上次快照时的摘要，按ID索引；没有或损坏时返回空表
+    public static Map<Long, NoteSummary> loadSummaries(Context context) {
+        Map<Long, NoteSummary> summaries = new HashMap<>();
+        File file = new File(context.getFilesDir(), SUMMARY_FILE_NAME);
+        if (!file.exists()) {
+            return summaries;
+        }
+        try {
+            InputStream is = new BufferedInputStream(new FileInputStream(file));
+            try {
+                if (!NoteCodec.hasMagic(is, NoteCodec.SUMMARIES_MAGIC)) {
+                    throw new IOException("Unknown summary format");
+                }
+                for (NoteSummary summary : NoteCodec.readSummaries(is)) {
+                    summaries.put(summary.getId(), summary);
+                }
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading summaries: " + e.getMessage());
+            summaries.clear();
+        }
+        return summaries;
+    }
+
+    // 打开快照；文件头损坏时按记录扫描抢救（NoteSegment.salvage），仍照常重放日志
+    // 读不懂或经过抢救的快照先改名隔离：映射在改名后依然有效，抢救出的笔记照常读取，
+    // 之后由调用方把抢救结果写成新快照，任何时候都不会在没读懂的文件上直接写
+    // 调用方持有 SNAPSHOT_LOCK
+    private static NoteSegment openSnapshot(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        NoteSegment segment;
+        try {
+            segment = NoteSegment.open(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Snapshot unreadable, salvaging records: " + e.getMessage());
+            try {
+                segment = NoteSegment.salvage(file);
+            } catch (IOException salvageError) {
+                // 连映射都失败，当作没有快照，仍然重放全部日志
+                Log.e(TAG, "Error salvaging snapshot: " + salvageError.getMessage());
+                segment = null;
+            }
+        }
+        if (segment == null || segment.isRecovered()) {
+            quarantine(context, file);
+        }
+        return segment;
+    }
+
+    private static void quarantine(Context context, File file) {
+        File target = new File(context.getFilesDir(), QUARANTINE_PREFIX + System.currentTimeMillis());
+        if (file.renameTo(target)) {
+            Log.e(TAG, "Damaged snapshot moved to " + target.getName());
+        } else {
+            snapshotBlocked = true;
+            Log.e(TAG, "Error moving damaged snapshot aside, snapshot writes disabled");
+        }
     }
 }
@@ -0,0 +1,166 @@
+package com.example.notepad;
+
+import java.text.CollationKey;
+import java.util.Date;
+
+// 列表用的笔记摘要：只有标题、正文开头一段和列表需要的标记，不持有完整正文
+// 完整笔记在打开时再通过 NoteRepository.getNote 按ID读取
+public class NoteSummary {
+    // 按码点截取，与 SQLite 的 substr 结果一致
+    public static final int PREVIEW_LENGTH = 120;
+
+    static final int FLAG_TODO = 1;
+    static final int FLAG_COMPLETED = 1 << 1;
+    static final int FLAG_IMAGE = 1 << 2;
+    static final int FLAG_AUDIO = 1 << 3;
+    static final int FLAG_VIDEO = 1 << 4;
+    static final int FLAG_STICKY = 1 << 5;
+
+    private final long id;
+    private final String title;
+    private final String preview;
+    private final Date date;
+    private final Date modifiedDate;
+    private final String category;
+    private final int priority;
+    private final int flags;
+    // 列表显示缩略图用，没有图片时为空串
+    private final String imagePath;
+    // 标题的排序键，按标题排序时才生成；摘要不可变，标题改了会生成新的摘要
+    private CollationKey titleKey;
+    // 搜索结果里命中关键字的一段正文（带高亮），由 NoteSnippet 在后台线程生成，没有时显示预览
+    private CharSequence snippet;
+
+    NoteSummary(long id, String title, String preview, Date date, Date modifiedDate,
+                String category, int priority, int flags, String imagePath) {
+        this.id = id;
+        this.title = title != null ? title : "";
+        this.preview = preview != null ? preview : "";
+        this.date = date;
+        this.modifiedDate = modifiedDate;
+        this.category = category != null ? category : "默认";
+        this.priority = priority;
+        this.flags = flags;
+        this.imagePath = imagePath != null ? imagePath : "";
+    }
+
+    public static NoteSummary of(Note note) {
+        return of(note, preview(note.getContent()));
+    }
+
+    // 复用之前生成的摘要的预览，省去读取正文；修改正文会刷新 date，date 不同说明预览已过期
+    public static NoteSummary of(Note note, NoteSummary previous) {
+        if (previous != null && previous.id == note.getId() && previous.date.equals(note.getDate())) {
+            return of(note, previous.preview);
+        }
+        return of(note);
+    }
+
+    private static NoteSummary of(Note note, String preview) {
+        return new NoteSummary(note.getId(), note.getTitle(), preview, note.getDate(),
+                note.getModifiedDate(), note.getCategory(), note.getPriority(), flags(note), note.getImagePath());
+    }
+
+    public static String preview(String content) {
+        if (content == null) {
+            return "";
+        }
+        if (content.codePointCount(0, content.length()) <= PREVIEW_LENGTH) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, PREVIEW_LENGTH));
+    }
+
+    static int flags(Note note) {
+        int flags = 0;
+        if (note.isTodo()) flags |= FLAG_TODO;
+        if (note.isCompleted()) flags |= FLAG_COMPLETED;
+        if (!note.getImagePath().isEmpty()) flags |= FLAG_IMAGE;
+        if (!note.getAudioPath().isEmpty()) flags |= FLAG_AUDIO;
+        if (!note.getVideoPath().isEmpty()) flags |= FLAG_VIDEO;
+        if (note.isStickyNote()) flags |= FLAG_STICKY;
+        return flags;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    // 多个线程同时生成得到的结果相同，不需要加锁
+    CollationKey getTitleKey() {
+        CollationKey key = titleKey;
+        if (key == null) {
+            key = NoteCollation.key(title);
+            titleKey = key;
+        }
+        return key;
+    }
+
+    public String getPreview() {
+        return preview;
+    }
+
+    public CharSequence getSnippet() {
+        return snippet;
+    }
+
+    // 摘要会被仓库和查询缓存共享，带摘录的是一个副本
+    NoteSummary withSnippet(CharSequence snippet) {
+        NoteSummary copy = new NoteSummary(id, title, preview, date, modifiedDate, category, priority, flags, imagePath);
+        copy.titleKey = titleKey;
+        copy.snippet = snippet;
+        return copy;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Date getModifiedDate() {
+        return modifiedDate;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+
+    public boolean isTodo() {
+        return (flags & FLAG_TODO) != 0;
+    }
+
+    public boolean isCompleted() {
+        return (flags & FLAG_COMPLETED) != 0;
+    }
+
+    public boolean hasImage() {
+        return (flags & FLAG_IMAGE) != 0;
+    }
+
+    public boolean hasAudio() {
+        return (flags & FLAG_AUDIO) != 0;
+    }
+
+    public boolean hasVideo() {
+        return (flags & FLAG_VIDEO) != 0;
+    }
+
+    public boolean isStickyNote() {
+        return (flags & FLAG_STICKY) != 0;
+    }
+}
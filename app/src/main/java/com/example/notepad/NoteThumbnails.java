@@ -0,0 +1,264 @@
+package com.example.notepad;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// 图片笔记的缩略图：原图按目标尺寸降采样解码（inSampleSize），不会把整张照片读进内存
+// 内存缓存按字节数做 LRU；磁盘缓存是 cacheDir/thumbnails 下的小 JPEG，文件名取自（路径、修改时间、尺寸），
+// 原图被替换后修改时间不同，自然用不到旧的缩略图；总大小超过 MAX_DISK_BYTES 时删掉最久没用的
+// 内存缓存与磁盘缓存用同一个键，原图被替换后内存里的旧缩略图也不会再命中
+// 编辑界面的大图预览（loadPreview）不进内存缓存，一张接近屏幕大小的图会挤掉几十张列表缩略图
+// 解码在后台线程完成，视图复用或改为显示别的图片时取消还没完成的请求；load/cancel 只在主线程调用
+public class NoteThumbnails {
+    private static final String TAG = "NoteThumbnails";
+    private static final String DIRECTORY = "thumbnails";
+    private static final long MAX_DISK_BYTES = 20L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private static NoteThumbnails instance;
+
+    private final File directory;
+    private final LruCache<String, Bitmap> memory;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<ImageView, Future<?>> requests = new HashMap<>();
+
+    private NoteThumbnails(Context context) {
+        directory = new File(context.getCacheDir(), DIRECTORY);
+        // 最多占用可用堆的 1/8
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized NoteThumbnails get(Context context) {
+        if (instance == null) {
+            instance = new NoteThumbnails(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // 把 path 的缩略图（短边不小于 size 像素）放进 imageView，内存缓存命中时立即显示
+    public void load(ImageView imageView, String path, int size) {
+        load(imageView, path, size, true);
+    }
+
+    // 大图预览：同样在后台解码、经过磁盘缓存，但不读写内存缓存
+    public void loadPreview(ImageView imageView, String path, int size) {
+        load(imageView, path, size, false);
+    }
+
+    private void load(ImageView imageView, String path, int size, boolean remember) {
+        cancel(imageView);
+        final String key = key(path, new File(path).lastModified(), size);
+        Bitmap cached = remember ? memory.get(key) : null;
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        final Future<?>[] request = new Future<?>[1];
+        request[0] = executor.submit(() -> {
+            Bitmap bitmap = thumbnail(path, key, size);
+            if (bitmap == null) {
+                return;
+            }
+            if (remember) {
+                memory.put(key, bitmap);
+            }
+            mainHandler.post(() -> {
+                // 期间视图已经换了图片或被取消
+                if (requests.get(imageView) == request[0]) {
+                    requests.remove(imageView);
+                    imageView.setImageBitmap(bitmap);
+                }
+            });
+        });
+        requests.put(imageView, request[0]);
+    }
+
+    public void cancel(ImageView imageView) {
+        Future<?> request = requests.remove(imageView);
+        if (request != null) {
+            request.cancel(true);
+        }
+    }
+
+    // 先查磁盘缓存，没有再解码原图并写入磁盘缓存；失败返回 null
+    private Bitmap thumbnail(String path, String key, int size) {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        File cached = new File(directory, key);
+        if (cached.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(cached.getPath());
+            if (bitmap != null) {
+                // 修改时间用作最近使用时间
+                cached.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = decode(path, size);
+        if (bitmap == null) {
+            return null;
+        }
+        write(bitmap, cached);
+        return bitmap;
+    }
+
+    // 降采样解码后缩放到短边恰好为 size，并按 EXIF 方向旋转
+    static Bitmap decode(String path, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, size);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) {
+            return null;
+        }
+        float scale = (float) size / Math.min(bitmap.getWidth(), bitmap.getHeight());
+        Matrix matrix = orientation(path);
+        if (scale < 1) {
+            matrix.postScale(scale, scale);
+        }
+        if (matrix.isIdentity()) {
+            return bitmap;
+        }
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (transformed != bitmap) {
+            bitmap.recycle();
+        }
+        return transformed;
+    }
+
+    // 2 的幂，解码结果的短边不小于 size
+    static int sampleSize(int width, int height, int size) {
+        int shortSide = Math.min(width, height);
+        int sample = 1;
+        while (shortSide / (sample * 2) >= size) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    private static Matrix orientation(String path) {
+        Matrix matrix = new Matrix();
+        try {
+            int orientation = new ExifInterface(path).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    matrix.postRotate(90);
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    matrix.postRotate(180);
+                    break;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    matrix.postRotate(270);
+                    break;
+                case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                    matrix.postScale(-1, 1);
+                    break;
+                case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                    matrix.postScale(1, -1);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading orientation: " + e.getMessage());
+        }
+        return matrix;
+    }
+
+    // 先写临时文件再改名，读到的缓存文件总是完整的
+    private synchronized void write(Bitmap bitmap, File file) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Rename failed");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing thumbnail: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        trim();
+    }
+
+    // 按最近使用时间从旧到新删除，直到总大小不超过 MAX_DISK_BYTES
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length && total > MAX_DISK_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String key(String path, long lastModified, int size) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((path + "\n" + lastModified + "\n" + size).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + 4);
+            for (byte b : hash) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(".jpg").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.notepad;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 后台写入：所有磁盘写操作都在唯一的写线程上按提交顺序执行，主线程只登记改动
+// 短时间内对同一笔记的多次修改会合并成一次写入
+public class NoteWriter {
+    private static final String TAG = "NoteWriter";
+    private static final long COALESCE_DELAY_MS = 300;
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Object lock = new Object();
+    // 待写入的改动，值为 null 表示删除
+    private LinkedHashMap<Long, Note> dirty = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    public NoteWriter(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public void markDirty(Note note) {
+        synchronized (lock) {
+            dirty.put(note.getId(), note);
+            scheduleFlushLocked();
+        }
+    }
+
+    public void markDeleted(long id) {
+        synchronized (lock) {
+            dirty.put(id, null);
+            scheduleFlushLocked();
+        }
+    }
+
+    // 整体替换：之前登记的改动都被新快照覆盖，直接丢弃
+    public void replaceAll(List<Note> notes) {
+        final List<Note> snapshot = new ArrayList<>(notes);
+        synchronized (lock) {
+            dirty.clear();
+        }
+        executor.execute(() -> NoteStorage.saveNotes(context, snapshot));
+    }
+
+    // 在写线程上执行其他磁盘任务（如自动备份），与笔记写入保持先后顺序
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // 立即把已登记的改动排队写出，不等待完成（切到后台时调用）
+    public void flushAsync() {
+        executor.execute(this::drain);
+    }
+
+    // 持久化屏障：返回时之前提交的所有写入都已落盘，不要在主线程调用
+    public void flush() {
+        try {
+            executor.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing notes: " + e.getMessage());
+        }
+    }
+
+    // 写出已登记的改动后停止写线程，已经排队的任务仍会执行；不要在主线程调用
+    public void close() {
+        flush();
+        executor.shutdown();
+    }
+
+    private void scheduleFlushLocked() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.schedule(this::drain, COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        LinkedHashMap<Long, Note> batch;
+        synchronized (lock) {
+            batch = dirty;
+            dirty = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+        if (!batch.isEmpty()) {
+            NoteStorage.saveChanges(context, batch);
+            Log.d(TAG, "Flushed " + batch.size() + " changes");
+        }
+    }
+}
@@ -4,50 +4,114 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Locale;
 
+// 列表更新在后台线程与当前列表做差异比较，只通知变化的行，滚动位置和动画都保留
+// 行ID就是笔记ID；摘要不可变，内容是否变化逐字段比较
+// 列表中的 null 是分页加载还没读到的占位行（见 NotePager），显示为空白卡片
 public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHolder> {
-    private List<Note> notes;
+    private static final DiffUtil.ItemCallback<NoteSummary> DIFF_CALLBACK = new DiffUtil.ItemCallback<NoteSummary>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            return oldItem.getId() == newItem.getId();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NoteSummary oldItem, @NonNull NoteSummary newItem) {
+            return oldItem == newItem || (oldItem.getTitle().equals(newItem.getTitle())
+                    && oldItem.getPreview().equals(newItem.getPreview())
+                    && oldItem.getDate().equals(newItem.getDate())
+                    && oldItem.getCategory().equals(newItem.getCategory())
+                    && oldItem.getPriority() == newItem.getPriority()
+                    && oldItem.getFlags() == newItem.getFlags()
+                    && oldItem.getImagePath().equals(newItem.getImagePath())
+                    && sameSnippet(oldItem.getSnippet(), newItem.getSnippet()));
+        }
+    };
+
+    private final AsyncListDiffer<NoteSummary> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
+    private final NotePreviews previews = new NotePreviews();
+    private NoteThumbnails thumbnails;
     private OnNoteClickListener listener;
     private SimpleDateFormat dateFormat;
+    // 列表当前的可见范围，预览从这里开始提前排版
+    private int firstVisible;
+    private int lastVisible;
 
     public interface OnNoteClickListener {
         void onNoteClick(int position);
         void onNoteLongClick(int position);
     }
 
-    public NotesAdapter(List<Note> notes, OnNoteClickListener listener) {
-        this.notes = notes;
+    public NotesAdapter(List<NoteSummary> notes, OnNoteClickListener listener) {
         this.listener = listener;
         this.dateFormat = new SimpleDateFormat("yyyy年MM月dd日 HH:mm", Locale.getDefault());
+        setHasStableIds(true);
+        // 新的一页读出来或列表刷新后，先在后台为可见范围附近还没排版的预览排版
+        differ.addListListener((previous, current) -> previews.prefetch(current, firstVisible, lastVisible));
+        differ.submitList(notes);
     }
     
-    public void updateNotes(List<Note> filteredNotes) {
-        this.notes = filteredNotes;
-        notifyDataSetChanged();
+    // 提交后列表不能再修改；比较完成前界面和 getNote 仍是旧列表，连续提交时只应用最后一次
+    public void updateNotes(List<NoteSummary> filteredNotes) {
+        differ.submitList(filteredNotes);
+    }
+
+    // 列表滚动或布局变化后调用，为新的可见范围附近的预览排版
+    public void onVisibleRange(int first, int last) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        previews.prefetch(differ.getCurrentList(), first, last);
+    }
+
+    // 按界面上的位置取摘要，与点击回调的位置对应；占位行返回 null
+    public NoteSummary getNote(int position) {
+        return differ.getCurrentList().get(position);
+    }
+
+    // 摘录带高亮，只比较文字
+    private static boolean sameSnippet(CharSequence a, CharSequence b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.toString().equals(b.toString());
     }
 
     @NonNull
     @Override
     public NoteViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (thumbnails == null) {
+            thumbnails = NoteThumbnails.get(parent.getContext());
+        }
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.note_item, parent, false);
         return new NoteViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull NoteViewHolder holder, int position) {
-        Note note = notes.get(position);
+        // 列表只绑定摘要，正文只显示开头一段；搜索结果显示命中处的摘录，排版见 NotePreviews
+        NoteSummary note = getNote(position);
+        if (note == null) {
+            bindPlaceholder(holder);
+            return;
+        }
         holder.titleTextView.setText(note.getTitle());
-        holder.contentTextView.setText(note.getContent());
+        previews.bind(holder.contentTextView, note);
         holder.dateTextView.setText(dateFormat.format(note.getDate()));
         holder.categoryTextView.setText(note.getCategory());
         
@@ -66,14 +130,20 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         }
         
         // 显示媒体类型图标
-        holder.iconImage.setVisibility(note.getImagePath() != null && !note.getImagePath().isEmpty() 
-            ? View.VISIBLE : View.GONE);
-        holder.iconAudio.setVisibility(note.getAudioPath() != null && !note.getAudioPath().isEmpty() 
-            ? View.VISIBLE : View.GONE);
-        holder.iconVideo.setVisibility(note.getVideoPath() != null && !note.getVideoPath().isEmpty() 
-            ? View.VISIBLE : View.GONE);
+        holder.iconImage.setVisibility(note.hasImage() ? View.VISIBLE : View.GONE);
+        holder.iconAudio.setVisibility(note.hasAudio() ? View.VISIBLE : View.GONE);
+        holder.iconVideo.setVisibility(note.hasVideo() ? View.VISIBLE : View.GONE);
         holder.iconSticky.setVisibility(note.isStickyNote() ? View.VISIBLE : View.GONE);
 
+        // 图片笔记显示缩略图，在后台解码，尺寸与布局中的图片框一致
+        if (note.hasImage() && !note.getImagePath().isEmpty()) {
+            holder.thumbnailView.setVisibility(View.VISIBLE);
+            thumbnails.load(holder.thumbnailView, note.getImagePath(), holder.thumbnailView.getLayoutParams().width);
+        } else {
+            thumbnails.cancel(holder.thumbnailView);
+            holder.thumbnailView.setVisibility(View.GONE);
+        }
+
         holder.cardView.setOnClickListener(v -> {
             int adapterPosition = holder.getAdapterPosition();
             if (adapterPosition != RecyclerView.NO_POSITION) {
@@ -89,9 +159,39 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         });
     }
 
+    private void bindPlaceholder(NoteViewHolder holder) {
+        holder.titleTextView.setText("");
+        previews.clear(holder.contentTextView);
+        holder.dateTextView.setText("");
+        holder.categoryTextView.setText("");
+        holder.iconTodo.setVisibility(View.GONE);
+        holder.iconImage.setVisibility(View.GONE);
+        holder.iconAudio.setVisibility(View.GONE);
+        holder.iconVideo.setVisibility(View.GONE);
+        holder.iconSticky.setVisibility(View.GONE);
+        thumbnails.cancel(holder.thumbnailView);
+        holder.thumbnailView.setVisibility(View.GONE);
+        holder.cardView.setOnClickListener(null);
+        holder.cardView.setOnLongClickListener(null);
+    }
+
+    // 复用前取消还没完成的缩略图请求，结果不会显示到别的行上
+    @Override
+    public void onViewRecycled(@NonNull NoteViewHolder holder) {
+        thumbnails.cancel(holder.thumbnailView);
+        holder.thumbnailView.setImageDrawable(null);
+    }
+
+    // 占位行用负数，不会与笔记ID重复
+    @Override
+    public long getItemId(int position) {
+        NoteSummary note = getNote(position);
+        return note != null ? note.getId() : -1 - position;
+    }
+
     @Override
     public int getItemCount() {
-        return notes.size();
+        return differ.getCurrentList().size();
     }
 
     static class NoteViewHolder extends RecyclerView.ViewHolder {
@@ -105,6 +205,7 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
         TextView iconVideo;
         TextView iconTodo;
         TextView iconSticky;
+        ImageView thumbnailView;
 
         public NoteViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -118,6 +219,7 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.NoteViewHold
             iconVideo = itemView.findViewById(R.id.icon_video);
             iconTodo = itemView.findViewById(R.id.icon_todo);
             iconSticky = itemView.findViewById(R.id.icon_sticky);
+            thumbnailView = itemView.findViewById(R.id.note_thumbnail);
         }
     }
 }
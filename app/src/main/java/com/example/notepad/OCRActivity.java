@@ -408,9 +408,10 @@ public class OCRActivity extends AppCompatActivity {
         // 创建新笔记
         Note note = new Note("OCR识别内容", text);
         note.setCategory("OCR");
+        NoteRepositories.get(this).save(note);
 
         Intent resultIntent = new Intent();
-        resultIntent.putExtra("note", note);
+        resultIntent.putExtra("note_id", note.getId());
         setResult(RESULT_OK, resultIntent);
         finish();
     }
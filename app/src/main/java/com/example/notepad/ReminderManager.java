@@ -22,11 +22,12 @@ public class ReminderManager {
         Intent intent = new Intent(context, ReminderReceiver.class);
         intent.putExtra("note_title", note.getTitle());
         intent.putExtra("note_content", note.getContent());
-        intent.putExtra("note_id", note.hashCode());
+        intent.putExtra("note_id", note.getId());
+        intent.putExtra("notification_id", requestCode(note));
         
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
             context, 
-            note.hashCode(), 
+            requestCode(note), 
             intent, 
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
@@ -39,13 +40,19 @@ public class ReminderManager {
         Intent intent = new Intent(context, ReminderReceiver.class);
         PendingIntent pendingIntent = PendingIntent.getBroadcast(
             context, 
-            note.hashCode(), 
+            requestCode(note), 
             intent, 
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
         alarmManager.cancel(pendingIntent);
     }
     
+    // 由笔记ID派生，编辑后的笔记仍对应同一个闹钟
+    private static int requestCode(Note note) {
+        long id = note.getId();
+        return (int) (id ^ (id >>> 32));
+    }
+    
     public static void updateAllReminders(Context context, List<Note> notes) {
         for (Note note : notes) {
             if (note.isTodo() && note.getReminderDate() != null) {
@@ -28,7 +28,7 @@ public class ReminderReceiver extends BroadcastReceiver {
         
         NotificationManager notificationManager = 
             (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        notificationManager.notify(intent.getIntExtra("note_id", 0), builder.build());
+        notificationManager.notify(intent.getIntExtra("notification_id", 0), builder.build());
     }
     
     private void createNotificationChannel(Context context) {
@@ -6,7 +6,9 @@ import android.view.MenuItem;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.SeekBar;
+import android.widget.Toast;
 
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
@@ -17,6 +19,7 @@ public class SettingsActivity extends AppCompatActivity {
     private RadioGroup themeRadioGroup;
     private RadioGroup backgroundColorRadioGroup;
     private SeekBar fontSizeSeekBar;
+    private RadioGroup storageRadioGroup;
     private MaterialCardView previewCard;
     
     private static final String PREFS_NAME = "NotepadSettings";
@@ -48,6 +51,7 @@ public class SettingsActivity extends AppCompatActivity {
         backgroundColorRadioGroup = findViewById(R.id.background_color_radio_group);
         fontSizeSeekBar = findViewById(R.id.font_size_seek_bar);
         previewCard = findViewById(R.id.preview_card);
+        storageRadioGroup = findViewById(R.id.storage_radio_group);
     }
     
     private void loadSettings() {
@@ -78,6 +82,13 @@ public class SettingsActivity extends AppCompatActivity {
         // 加载字体大小设置
         int fontSize = preferences.getInt(KEY_FONT_SIZE, 16);
         fontSizeSeekBar.setProgress(fontSize - 12); // 12-20 范围
+        
+        // 加载存储方式设置
+        if (NoteRepositories.BACKEND_FILE.equals(NoteRepositories.getBackend(this))) {
+            storageRadioGroup.check(R.id.radio_storage_file);
+        } else {
+            storageRadioGroup.check(R.id.radio_storage_sqlite);
+        }
     }
     
     private void setListeners() {
@@ -113,6 +124,23 @@ public class SettingsActivity extends AppCompatActivity {
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {}
         });
+        
+        storageRadioGroup.setOnCheckedChangeListener((group, checkedId) -> {
+            String backend = checkedId == R.id.radio_storage_file
+                    ? NoteRepositories.BACKEND_FILE : NoteRepositories.BACKEND_SQLITE;
+            if (backend.equals(NoteRepositories.getBackend(this))) {
+                return;
+            }
+            // 现有笔记在后台复制到新的存储中，复制完成前不能离开设置页面，以免有新的修改没有被带过去
+            AlertDialog progress = new AlertDialog.Builder(this)
+                    .setMessage("正在迁移笔记…")
+                    .setCancelable(false)
+                    .show();
+            NoteRepositories.setBackend(this, backend, () -> {
+                progress.dismiss();
+                Toast.makeText(this, "存储方式已切换", Toast.LENGTH_SHORT).show();
+            });
+        });
     }
     
     private void updatePreview() {
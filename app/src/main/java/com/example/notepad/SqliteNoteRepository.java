@@ -0,0 +1,881 @@
+package com.example.notepad;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// SQLite 存储后端：过滤、排序和全文搜索都交给索引完成，内存中不保留笔记列表
+// 写入与 FileNoteRepository 一样交给唯一的写线程按提交顺序执行，调用方（通常是主线程）不等待磁盘；
+// 还没提交的写入记在 pending 中，getNote 和 contains 立即能看到，列表查询在提交后由观察者通知刷新
+public class SqliteNoteRepository implements NoteRepository {
+    private static final String TAG = "SqliteNoteRepository";
+
+    private final NoteDatabase database;
+    // 写线程，也执行 execute 提交的任务
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NoteObservers observers = new NoteObservers();
+    // 已交给写线程、还没提交的写入，值为 null 表示删除
+    private final Map<Long, Note> pending = new HashMap<>();
+    // 还没提交的整体替换数，大于 0 时不在 pending 中的笔记视为已不存在；受 pending 的锁保护
+    private int pendingReplaces;
+    // 模糊匹配用的拉丁词二元组索引，第一次模糊匹配时建立，为 null 表示还没建立；受 termLock 保护
+    private final Object termLock = new Object();
+    private NoteFuzzy.TermIndex similarIndex;
+    // 最近一次按相关度排序的结果，翻页时共用；写入提交后作废，受 rankingLock 保护
+    private final Object rankingLock = new Object();
+    private Ranking ranking;
+    private long rankingVersion;
+
+    public SqliteNoteRepository(Context context) {
+        this.database = new NoteDatabase(context);
+    }
+
+    @Override
+    public Note getNote(long id) {
+        synchronized (pending) {
+            if (pending.containsKey(id)) {
+                Note note = pending.get(id);
+                return note != null ? note.copy() : null;
+            }
+            if (pendingReplaces > 0) {
+                return null;
+            }
+        }
+        return queryNote(id);
+    }
+
+    // 只读已提交的数据
+    private Note queryNote(long id) {
+        List<Note> notes = queryNotes("id = ?", new String[]{String.valueOf(id)}, null);
+        return notes.isEmpty() ? null : notes.get(0);
+    }
+
+    @Override
+    public boolean contains(long id) {
+        synchronized (pending) {
+            if (pending.containsKey(id)) {
+                return pending.get(id) != null;
+            }
+            if (pendingReplaces > 0) {
+                return false;
+            }
+        }
+        return DatabaseUtils.queryNumEntries(database.getReadableDatabase(), NoteDatabase.TABLE_NOTES,
+                "id = ?", new String[]{String.valueOf(id)}) > 0;
+    }
+
+    @Override
+    public List<Note> getAll() {
+        // ID 按创建时间递增，相当于文件后端的插入顺序
+        return queryNotes(null, null, "id");
+    }
+
+    @Override
+    public int size() {
+        return (int) DatabaseUtils.queryNumEntries(database.getReadableDatabase(), NoteDatabase.TABLE_NOTES);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // 走 idx_notes_category，只扫索引不读行
+    @Override
+    public Map<String, Integer> getCategoryCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT category, COUNT(*) FROM " + NoteDatabase.TABLE_NOTES + " GROUP BY category", null);
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    @Override
+    public List<NoteSummary> getSummaries() {
+        return selectSummaries(null, null, "id");
+    }
+
+    @Override
+    public List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode) {
+        return querySummaries(category, todoOnly, text, sortMode, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode,
+                                            NoteSummary after, int limit) {
+        List<String> args = new ArrayList<>();
+        String selection = selection(category, todoOnly, text, args);
+        // 没有关键字时相关度都为 0，顺序与按时间排序相同，走时间的键集
+        if (sortMode == SORT_BY_RELEVANCE && !NoteQuery.parse(text).getPositiveTexts().isEmpty()) {
+            return rankedPage(ranking(category, todoOnly, text, selection, args), after, limit);
+        }
+        if (after != null) {
+            selection = (selection != null ? selection + " AND " : "") + keyset(sortMode, after, args);
+        }
+        return selectSummaries(selection, args.toArray(new String[0]),
+                orderBy(sortMode) + ", id" + (limit < Integer.MAX_VALUE ? " LIMIT " + limit : ""));
+    }
+
+    // 同一查询的排序结果，没有缓存时查出全部结果的ID和修改时间，按得分排好；得分写不进 WHERE 子句，
+    // 每次翻页都重新打分排序太慢，各页共用一次的结果
+    private Ranking ranking(String category, boolean todoOnly, String text, String selection, List<String> args) {
+        long startVersion;
+        synchronized (rankingLock) {
+            if (ranking != null && ranking.matches(category, todoOnly, text)) {
+                return ranking;
+            }
+            startVersion = rankingVersion;
+        }
+        List<long[]> rows = new ArrayList<>();
+        Cursor cursor = database.getReadableDatabase().rawQuery("SELECT id, modified FROM "
+                + NoteDatabase.TABLE_NOTES + (selection != null ? " WHERE " + selection : ""),
+                args.toArray(new String[0]));
+        try {
+            while (cursor.moveToNext()) {
+                rows.add(new long[]{cursor.getLong(0), cursor.getLong(1)});
+            }
+        } finally {
+            cursor.close();
+        }
+        Ranking result = new Ranking(category, todoOnly, text, rows, relevance(text));
+        synchronized (rankingLock) {
+            if (rankingVersion == startVersion) {
+                ranking = result;
+            }
+        }
+        return result;
+    }
+
+    // 读出排序结果中严格排在 after 之后的最多 limit 条
+    private List<NoteSummary> rankedPage(Ranking ranking, NoteSummary after, int limit) {
+        int start = after != null ? ranking.indexAfter(after) : 0;
+        int end = (int) Math.min(ranking.ids.length, (long) start + limit);
+        List<NoteSummary> page = new ArrayList<>(end - start);
+        if (start >= end) {
+            return page;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            ids.append(i > start ? "," : "").append(ranking.ids[i]);
+        }
+        Map<Long, NoteSummary> byId = new HashMap<>();
+        for (NoteSummary summary : selectSummaries("id IN (" + ids + ")", null, null)) {
+            byId.put(summary.getId(), summary);
+        }
+        for (int i = start; i < end; i++) {
+            NoteSummary summary = byId.get(ranking.ids[i]);
+            if (summary != null) {
+                page.add(summary);
+            }
+        }
+        return page;
+    }
+
+    // 写入提交后调用，之后的查询重新排序
+    private void invalidateRanking() {
+        synchronized (rankingLock) {
+            rankingVersion++;
+            ranking = null;
+        }
+    }
+
+    // 按相关度排序的全部结果：顺序同 relevanceComparator（得分高的在前，再按修改时间从新到旧、ID从小到大）
+    private static class Ranking {
+        final String category;
+        final boolean todoOnly;
+        final String text;
+        final Map<Long, Float> scores;
+        final long[] ids;
+        final long[] modified;
+
+        Ranking(String category, boolean todoOnly, String text, List<long[]> rows, Map<Long, Float> scores) {
+            this.category = category;
+            this.todoOnly = todoOnly;
+            this.text = text;
+            this.scores = scores;
+            Collections.sort(rows, (r1, r2) -> compare(r1[0], r1[1], r2[0], r2[1]));
+            ids = new long[rows.size()];
+            modified = new long[rows.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = rows.get(i)[0];
+                modified[i] = rows.get(i)[1];
+            }
+        }
+
+        boolean matches(String category, boolean todoOnly, String text) {
+            return (category != null ? category.equals(this.category) : this.category == null)
+                    && todoOnly == this.todoOnly && text.equals(this.text);
+        }
+
+        // 第一个严格排在 after 之后的位置；after 只用来比较，不要求它仍在结果中
+        int indexAfter(NoteSummary after) {
+            long id = after.getId();
+            long time = after.getModifiedDate().getTime();
+            int low = 0;
+            int high = ids.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(ids[middle], modified[middle], id, time) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int compare(long id1, long modified1, long id2, long modified2) {
+            Float s1 = scores.get(id1);
+            Float s2 = scores.get(id2);
+            int result = Float.compare(s2 != null ? s2 : 0, s1 != null ? s1 : 0);
+            if (result == 0) result = Long.compare(modified2, modified1);
+            return result != 0 ? result : Long.compare(id1, id2);
+        }
+    }
+
+    // 按 orderBy(sortMode) + ", id" 的顺序排在 after 之后；走与排序相同的索引
+    private static String keyset(int sortMode, NoteSummary after, List<String> args) {
+        String modified = String.valueOf(after.getModifiedDate().getTime());
+        String id = String.valueOf(after.getId());
+        String byTime = "(modified < ? OR (modified = ? AND id > ?))";
+        switch (sortMode) {
+            case SORT_BY_TITLE:
+                Collections.addAll(args, after.getTitle(), after.getTitle(), id);
+                return "(title COLLATE LOCALIZED > ? OR (title COLLATE LOCALIZED = ? AND id > ?))";
+            case SORT_BY_CATEGORY:
+                Collections.addAll(args, after.getCategory(), after.getCategory(), modified, modified, id);
+                return "(category COLLATE NOCASE > ? OR (category COLLATE NOCASE = ? AND " + byTime + "))";
+            case SORT_BY_PRIORITY:
+                String priority = String.valueOf(after.getPriority());
+                Collections.addAll(args, priority, priority, modified, modified, id);
+                return "(priority < ? OR (priority = ? AND " + byTime + "))";
+            default:
+                Collections.addAll(args, modified, modified, id);
+                return byTime;
+        }
+    }
+
+    // BM25 相关度，统计量取自 matchinfo 'pcnalx'：短语数、列数、总行数、各列平均长度、本行各列长度，
+    // 然后每个短语每列三个数（本行命中次数、全部命中次数、命中的行数）
+    // 标题列的词频和长度按 TITLE_WEIGHT 倍计算，与文件后端一致
+    private Map<Long, Float> relevance(String text) {
+        Map<Long, Float> scores = new HashMap<>();
+        // 每个词一个短语，用 OR 连接：拼音词在全文索引里没有，不能让它把整个查询变成空结果
+        StringBuilder match = new StringBuilder();
+        for (String positive : NoteQuery.parse(text).getPositiveTexts()) {
+            for (String word : positive.split("\\s+")) {
+                String phrase = NoteDatabase.toMatchQuery(word);
+                if (phrase != null) {
+                    match.append(match.length() > 0 ? " OR " : "").append(phrase);
+                }
+            }
+        }
+        if (match.length() == 0) {
+            return scores;
+        }
+        Cursor cursor = database.getReadableDatabase().rawQuery("SELECT docid, matchinfo("
+                + NoteDatabase.TABLE_FTS + ", 'pcnalx') FROM " + NoteDatabase.TABLE_FTS
+                + " WHERE " + NoteDatabase.TABLE_FTS + " MATCH ?", new String[]{match.toString()});
+        try {
+            while (cursor.moveToNext()) {
+                IntBuffer info = ByteBuffer.wrap(cursor.getBlob(1)).order(ByteOrder.nativeOrder()).asIntBuffer();
+                int phrases = info.get(0);
+                int columns = info.get(1);
+                int count = info.get(2);
+                // 第 0 列是标题，第 1 列是正文
+                float averageLength = info.get(3) * NoteSearchIndex.TITLE_WEIGHT + info.get(4);
+                int length = info.get(3 + columns) * NoteSearchIndex.TITLE_WEIGHT + info.get(4 + columns);
+                int hits = 3 + 2 * columns;
+                float score = 0;
+                for (int i = 0; i < phrases; i++) {
+                    int title = hits + 3 * (i * columns);
+                    int content = hits + 3 * (i * columns + 1);
+                    int frequency = info.get(title) * NoteSearchIndex.TITLE_WEIGHT + info.get(content);
+                    if (frequency > 0) {
+                        int documents = Math.max(info.get(title + 2), info.get(content + 2));
+                        score += NoteSearchIndex.bm25(frequency, documents, length, Math.max(1f, averageLength), count);
+                    }
+                }
+                scores.put(cursor.getLong(0), score);
+            }
+        } finally {
+            cursor.close();
+        }
+        return scores;
+    }
+
+    // 只查出匹配关键字的ID，不排序也不读取行内容，再按 candidates 的顺序筛选
+    @Override
+    public List<NoteSummary> narrowSummaries(List<NoteSummary> candidates, String text) {
+        List<String> args = new ArrayList<>();
+        String selection = selection(null, false, text, args);
+        if (selection == null) {
+            return new ArrayList<>(candidates);
+        }
+        Set<Long> ids = new HashSet<>();
+        Cursor cursor = database.getReadableDatabase().rawQuery("SELECT id FROM " + NoteDatabase.TABLE_NOTES
+                + " WHERE " + selection, args.toArray(new String[0]));
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        List<NoteSummary> result = new ArrayList<>();
+        for (NoteSummary candidate : candidates) {
+            if (ids.contains(candidate.getId())) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    // 打分方式与文件后端相同（NoteFuzzy）：每个候选文本拆成单字、二元组和词，
+    // 各自的相近词用 OR 连成一个 MATCH，matchinfo 给出每篇笔记命中了哪些词，命中的笔记数即词的文档频率
+    @Override
+    public List<NoteSummary> fuzzySummaries(List<String> alternatives, String category, boolean todoOnly) {
+        SQLiteDatabase db = database.getReadableDatabase();
+        List<Map<Long, Float>> scores = new ArrayList<>(alternatives.size());
+        for (String alternative : alternatives) {
+            scores.add(fuzzyScores(db, alternative));
+        }
+        long[] ranked = NoteFuzzy.rank(scores);
+        if (ranked.length == 0) {
+            return new ArrayList<>();
+        }
+        List<String> args = new ArrayList<>();
+        String selection = selection(category, todoOnly, null, args);
+        StringBuilder ids = new StringBuilder();
+        for (long id : ranked) {
+            ids.append(ids.length() > 0 ? "," : "").append(id);
+        }
+        selection = (selection != null ? selection + " AND " : "") + "id IN (" + ids + ")";
+        Map<Long, NoteSummary> byId = new HashMap<>();
+        for (NoteSummary summary : selectSummaries(selection, args.toArray(new String[0]), null)) {
+            byId.put(summary.getId(), summary);
+        }
+        List<NoteSummary> result = new ArrayList<>(byId.size());
+        for (long id : ranked) {
+            NoteSummary summary = byId.get(id);
+            if (summary != null) {
+                result.add(summary);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, Float> fuzzyScores(SQLiteDatabase db, String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        NoteSearchIndex.collectTerms(text, terms, false);
+        // 每个短语属于哪个查询词、相似度多少
+        List<String> phrases = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        List<Float> similarities = new ArrayList<>();
+        int termIndex = 0;
+        for (String term : terms) {
+            if (NoteSearchIndex.isCjk(term.codePointAt(0))) {
+                phrases.add(NoteDatabase.toPhraseQuery(term));
+                owners.add(termIndex);
+                similarities.add(1f);
+            } else {
+                for (Map.Entry<String, Float> e : similarTerms(db, term).entrySet()) {
+                    phrases.add('"' + e.getKey() + '"');
+                    owners.add(termIndex);
+                    similarities.add(e.getValue());
+                }
+            }
+            termIndex++;
+        }
+        if (phrases.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        StringBuilder match = new StringBuilder();
+        for (String phrase : phrases) {
+            match.append(match.length() > 0 ? " OR " : "").append(phrase);
+        }
+        // 每个查询词在各笔记中命中的最接近的词的相似度；matchinfo 'pcn'：短语数、列数、总行数，
+        // 然后每个短语每列一个本行命中次数
+        List<Map<Long, Float>> matches = new ArrayList<>(terms.size());
+        for (int t = 0; t < terms.size(); t++) {
+            matches.add(new HashMap<>());
+        }
+        int count = 0;
+        Cursor cursor = db.rawQuery("SELECT docid, matchinfo(" + NoteDatabase.TABLE_FTS + ", 'pcn') FROM "
+                + NoteDatabase.TABLE_FTS + " WHERE " + NoteDatabase.TABLE_FTS + " MATCH ?",
+                new String[]{match.toString()});
+        try {
+            while (cursor.moveToNext()) {
+                IntBuffer info = ByteBuffer.wrap(cursor.getBlob(1)).order(ByteOrder.nativeOrder()).asIntBuffer();
+                int columns = info.get(1);
+                count = info.get(2);
+                long id = cursor.getLong(0);
+                for (int i = 0; i < phrases.size(); i++) {
+                    for (int c = 0; c < columns; c++) {
+                        if (info.get(3 + i * columns + c) > 0) {
+                            Map<Long, Float> best = matches.get(owners.get(i));
+                            Float previous = best.get(id);
+                            if (previous == null || similarities.get(i) > previous) {
+                                best.put(id, similarities.get(i));
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return NoteFuzzy.score(matches, count);
+    }
+
+    // 词表中与 term 相近的词及相似度；二元组索引第一次用到时从 fts4aux 词表建立，之后保存笔记时加入新词
+    // 删除笔记留下的词不再命中任何笔记，只是白占一个名额，整体替换后重建
+    private Map<String, Float> similarTerms(SQLiteDatabase db, String term) {
+        synchronized (termLock) {
+            if (similarIndex == null) {
+                similarIndex = new NoteFuzzy.TermIndex();
+                Cursor cursor = db.rawQuery("SELECT term FROM " + NoteDatabase.TABLE_TERMS + " WHERE col = '*'",
+                        null);
+                try {
+                    while (cursor.moveToNext()) {
+                        similarIndex.add(cursor.getString(0));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            return similarIndex.similar(term);
+        }
+    }
+
+    // 在写线程上、提交之后调用；索引还没建立时不用管，建立时会读到已提交的词
+    private void addTerms(Note note) {
+        synchronized (termLock) {
+            if (similarIndex == null) {
+                return;
+            }
+            for (String token : NoteDatabase.tokenize(note.getTitle() + " " + note.getContent()).split(" ")) {
+                if (!token.isEmpty()) {
+                    similarIndex.add(token);
+                }
+            }
+        }
+    }
+
+    // 拼出过滤条件，参数追加到 args；没有条件时返回 null
+    // 查询语法（NoteQuery）的每个条件转成一个子句，由 SQLite 根据索引选择执行顺序
+    private static String selection(String category, boolean todoOnly, String text, List<String> args) {
+        StringBuilder selection = new StringBuilder();
+        if (category != null) {
+            selection.append("category = ?");
+            args.add(category);
+        }
+        if (todoOnly) {
+            appendAnd(selection).append("todo = 1");
+        }
+        StringBuilder match = new StringBuilder();
+        for (NoteQuery.Predicate predicate : NoteQuery.parse(text).getPredicates()) {
+            // 不取反的关键字和短语合并成一个 MATCH 表达式
+            String expression = predicate.field == NoteQuery.FIELD_PHRASE
+                    ? NoteDatabase.toPhraseQuery(predicate.text)
+                    : predicate.field == NoteQuery.FIELD_TEXT ? NoteDatabase.toMatchQuery(predicate.text) : null;
+            // 只有字母的关键字也可能是拼音或首字母，与拼音索引的结果取并集，不能并入上面的 MATCH
+            boolean pinyin = predicate.field == NoteQuery.FIELD_TEXT && NotePinyin.isPinyinQuery(predicate.text);
+            if (expression != null && !predicate.negated && !pinyin) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(expression);
+                continue;
+            }
+            appendAnd(selection);
+            if (predicate.negated) {
+                selection.append("NOT ");
+            }
+            if (pinyin) {
+                selection.append("(id IN (SELECT docid FROM ").append(NoteDatabase.TABLE_FTS)
+                        .append(" WHERE ").append(NoteDatabase.TABLE_FTS).append(" MATCH ?)")
+                        .append(" OR id IN (SELECT docid FROM ").append(NoteDatabase.TABLE_PINYIN)
+                        .append(" WHERE ").append(NoteDatabase.TABLE_PINYIN).append(" MATCH ?))");
+                args.add(expression);
+                args.add(predicate.text + "*");
+            } else if (expression != null) {
+                selection.append("id IN (SELECT docid FROM ").append(NoteDatabase.TABLE_FTS)
+                        .append(" WHERE ").append(NoteDatabase.TABLE_FTS).append(" MATCH ?)");
+                args.add(expression);
+            } else {
+                appendPredicate(selection, predicate, args);
+            }
+        }
+        if (match.length() > 0) {
+            appendAnd(selection).append("id IN (SELECT docid FROM ").append(NoteDatabase.TABLE_FTS)
+                    .append(" WHERE ").append(NoteDatabase.TABLE_FTS).append(" MATCH ?)");
+            args.add(match.toString());
+        }
+        return selection.length() > 0 ? selection.toString() : null;
+    }
+
+    // 不走全文索引的条件，整体加括号以便前面加 NOT
+    private static void appendPredicate(StringBuilder selection, NoteQuery.Predicate predicate, List<String> args) {
+        switch (predicate.field) {
+            case NoteQuery.FIELD_CATEGORY:
+                selection.append("(category = ?)");
+                args.add(predicate.text);
+                break;
+            case NoteQuery.FIELD_PRIORITY:
+                selection.append("(priority = ?)");
+                args.add(String.valueOf(predicate.value));
+                break;
+            case NoteQuery.FIELD_TODO:
+                if (predicate.value == NoteQuery.TODO_OPEN) {
+                    selection.append("(todo = 1 AND completed = 0)");
+                } else if (predicate.value == NoteQuery.TODO_DONE) {
+                    selection.append("(todo = 1 AND completed = 1)");
+                } else {
+                    selection.append("(todo = 1)");
+                }
+                break;
+            case NoteQuery.FIELD_BEFORE:
+                selection.append("(modified < ?)");
+                args.add(String.valueOf(predicate.value));
+                break;
+            case NoteQuery.FIELD_AFTER:
+                selection.append("(modified >= ?)");
+                args.add(String.valueOf(predicate.value));
+                break;
+            case NoteQuery.FIELD_HAS:
+                if (predicate.value == NoteQuery.HAS_IMAGE) {
+                    selection.append("(IFNULL(image_path, '') <> '')");
+                } else if (predicate.value == NoteQuery.HAS_AUDIO) {
+                    selection.append("(IFNULL(audio_path, '') <> '')");
+                } else if (predicate.value == NoteQuery.HAS_VIDEO) {
+                    selection.append("(IFNULL(video_path, '') <> '')");
+                } else if (predicate.value == NoteQuery.HAS_STICKY) {
+                    selection.append("(sticky = 1)");
+                } else {
+                    selection.append("(reminder IS NOT NULL)");
+                }
+                break;
+            default:
+                // 只有标点之类无法分词的字符，退回到子串匹配
+                String pattern = "%" + predicate.text.replace("\\", "\\\\").replace("%", "\\%")
+                        .replace("_", "\\_") + "%";
+                selection.append("(title LIKE ? ESCAPE '\\' OR content LIKE ? ESCAPE '\\')");
+                args.add(pattern);
+                args.add(pattern);
+                break;
+        }
+    }
+
+    // 写入在写线程上提交，观察者在提交之后回调
+    @Override
+    public void save(Note note) {
+        final Note saved = note.copy();
+        synchronized (pending) {
+            pending.put(saved.getId(), saved);
+        }
+        executor.execute(() -> {
+            SQLiteDatabase db = database.getWritableDatabase();
+            String previousCategory;
+            db.beginTransaction();
+            try {
+                previousCategory = queryCategory(db, saved.getId());
+                NoteDatabase.upsertNote(db, saved);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            settle(saved.getId(), saved);
+            invalidateRanking();
+            addTerms(saved);
+            observers.notifySaved(saved, previousCategory);
+        });
+    }
+
+    @Override
+    public void delete(long id) {
+        synchronized (pending) {
+            pending.put(id, null);
+        }
+        executor.execute(() -> {
+            Note removed = detach(id);
+            if (removed != null) {
+                SQLiteDatabase db = database.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    NoteDatabase.deleteNote(db, id);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            settle(id, null);
+            invalidateRanking();
+            if (removed != null) {
+                observers.notifyDeleted(removed);
+            }
+        });
+    }
+
+    @Override
+    public void replaceAll(List<Note> notes) {
+        // 与 save 一样保存副本，调用方之后修改自己的实例不影响排队的写入
+        final List<Note> snapshot = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            snapshot.add(note.copy());
+        }
+        synchronized (pending) {
+            // 之前排队的写入都会被这次替换覆盖
+            pending.clear();
+            for (Note note : snapshot) {
+                pending.put(note.getId(), note);
+            }
+            pendingReplaces++;
+        }
+        executor.execute(() -> {
+            SQLiteDatabase db = database.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                NoteDatabase.deleteAll(db);
+                for (Note note : snapshot) {
+                    NoteDatabase.upsertNote(db, note);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            synchronized (pending) {
+                pendingReplaces--;
+                for (Note note : snapshot) {
+                    settle(note.getId(), note);
+                }
+            }
+            synchronized (termLock) {
+                similarIndex = null;
+            }
+            invalidateRanking();
+            observers.notifyReplaced();
+        });
+    }
+
+    // 已提交的笔记所在的分类，不存在时为 null
+    private static String queryCategory(SQLiteDatabase db, long id) {
+        Cursor cursor = db.rawQuery("SELECT category FROM " + NoteDatabase.TABLE_NOTES + " WHERE id = ?",
+                new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // 写入已提交：pending 中还是这次写入的内容时移除，之后又有新的写入排队则保留
+    private void settle(long id, Note written) {
+        synchronized (pending) {
+            if (pending.containsKey(id) && pending.get(id) == written) {
+                pending.remove(id);
+            }
+        }
+    }
+
+    @Override
+    public void addObserver(Observer observer) {
+        observers.add(observer);
+    }
+
+    @Override
+    public void removeObserver(Observer observer) {
+        observers.remove(observer);
+    }
+
+    // 与写入共用写线程，任务按提交顺序执行
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    // 在写线程上读取：之前排队的写入都已提交，之后的还没有，getAll 不看 pending，读到的正是那一刻的数据
+    @Override
+    public void executeWithNotes(NotesTask task) {
+        executor.execute(() -> task.run(getAll()));
+    }
+
+    // 写入已经按提交顺序排队执行；切到后台时在队尾做一次 WAL 检查点，把已提交的数据写回主数据库文件
+    @Override
+    public void flushAsync() {
+        executor.execute(this::checkpoint);
+    }
+
+    // 持久化屏障：返回时之前提交的所有写入都已提交并做过检查点
+    @Override
+    public void flush() {
+        try {
+            executor.submit(this::checkpoint).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing notes: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        executor.shutdown();
+        database.close();
+    }
+
+    private void checkpoint() {
+        Cursor cursor = database.getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static StringBuilder appendAnd(StringBuilder selection) {
+        if (selection.length() > 0) {
+            selection.append(" AND ");
+        }
+        return selection;
+    }
+
+    // 与 NoteRepository.summaryComparator 的顺序一致
+    private static String orderBy(int sortMode) {
+        switch (sortMode) {
+            case SORT_BY_TITLE:
+                return "title COLLATE LOCALIZED";
+            case SORT_BY_CATEGORY:
+                return "category COLLATE NOCASE, modified DESC";
+            case SORT_BY_PRIORITY:
+                return "priority DESC, modified DESC";
+            default:
+                return "modified DESC";
+        }
+    }
+
+    private List<Note> queryNotes(String selection, String[] args, String orderBy) {
+        String sql = "SELECT " + NoteDatabase.META_COLUMNS + " FROM " + NoteDatabase.TABLE_NOTES
+                + (selection != null ? " WHERE " + selection : "")
+                + (orderBy != null ? " ORDER BY " + orderBy : "");
+        List<Note> notes = new ArrayList<>();
+        Cursor cursor = database.getReadableDatabase().rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                notes.add(readNote(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return notes;
+    }
+
+    private List<NoteSummary> selectSummaries(String selection, String[] args, String orderBy) {
+        String sql = "SELECT " + NoteDatabase.SUMMARY_COLUMNS + " FROM " + NoteDatabase.TABLE_NOTES
+                + (selection != null ? " WHERE " + selection : "")
+                + (orderBy != null ? " ORDER BY " + orderBy : "");
+        List<NoteSummary> summaries = new ArrayList<>();
+        Cursor cursor = database.getReadableDatabase().rawQuery(sql, args);
+        try {
+            while (cursor.moveToNext()) {
+                summaries.add(readSummary(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return summaries;
+    }
+
+    // 列顺序见 NoteDatabase.SUMMARY_COLUMNS
+    private static NoteSummary readSummary(Cursor cursor) {
+        int flags = 0;
+        if (cursor.getInt(7) != 0) flags |= NoteSummary.FLAG_TODO;
+        if (cursor.getInt(8) != 0) flags |= NoteSummary.FLAG_COMPLETED;
+        if (!isEmpty(cursor, 9)) flags |= NoteSummary.FLAG_IMAGE;
+        if (!isEmpty(cursor, 10)) flags |= NoteSummary.FLAG_AUDIO;
+        if (!isEmpty(cursor, 11)) flags |= NoteSummary.FLAG_VIDEO;
+        if (cursor.getInt(12) != 0) flags |= NoteSummary.FLAG_STICKY;
+        return new NoteSummary(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                new Date(cursor.getLong(3)), new Date(cursor.getLong(4)), cursor.getString(5),
+                cursor.getInt(6), flags, cursor.getString(9));
+    }
+
+    private static boolean isEmpty(Cursor cursor, int column) {
+        return cursor.isNull(column) || cursor.getString(column).isEmpty();
+    }
+
+    // 列顺序见 NoteDatabase.META_COLUMNS
+    private Note readNote(Cursor cursor) {
+        long id = cursor.getLong(0);
+        Note note = new Note(id, cursor.getString(1), null);
+        note.setCategory(cursor.getString(4));
+        note.setFolder(cursor.getString(5));
+        note.setLocked(cursor.getInt(6) != 0);
+        note.setPassword(cursor.getString(7));
+        note.setTodo(cursor.getInt(8) != 0);
+        if (!cursor.isNull(10)) {
+            note.setReminderDate(new Date(cursor.getLong(10)));
+        }
+        note.setPriority(cursor.getInt(11));
+        note.setColor(cursor.getString(12));
+        note.setImagePath(cursor.getString(13));
+        note.setAudioPath(cursor.getString(14));
+        note.setVideoPath(cursor.getString(15));
+        note.setStickyNote(cursor.getInt(16) != 0);
+        // setCompleted 会刷新修改时间，所以日期放在最后还原
+        note.setCompleted(cursor.getInt(9) != 0);
+        note.setDate(new Date(cursor.getLong(2)));
+        note.setModifiedDate(new Date(cursor.getLong(3)));
+        note.setContentLoader(() -> loadContent(id));
+        return note;
+    }
+
+    // 读出即将删除的笔记，正文也一并取出，删除后调用方仍可访问
+    private Note detach(long id) {
+        Note note = queryNote(id);
+        if (note != null) {
+            final String content = loadContent(id);
+            note.setContentLoader(() -> content);
+        }
+        return note;
+    }
+
+    private String loadContent(long id) {
+        Cursor cursor = database.getReadableDatabase().rawQuery(
+                "SELECT content FROM " + NoteDatabase.TABLE_NOTES + " WHERE id = ?",
+                new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : "";
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -53,9 +53,10 @@ public class StickyNoteActivity extends AppCompatActivity {
         Note note = new Note("便签", content);
         note.setStickyNote(true);
         note.setCategory("便签");
+        NoteRepositories.get(this).save(note);
 
         Intent resultIntent = new Intent();
-        resultIntent.putExtra("note", note);
+        resultIntent.putExtra("note_id", note.getId());
         setResult(RESULT_OK, resultIntent);
         finish();
     }
@@ -4,39 +4,38 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
 public class UserStorage {
     private static final String PREFS_NAME = "NotepadUserPrefs";
     private static final String KEY_CURRENT_USER = "current_user";
-    private static final String FILE_NAME = "users.dat";
+    private static final String FILE_NAME = "users.bin";
+    private static final String LEGACY_FILE_NAME = "users.dat";
     private static final String TAG = "UserStorage";
     
     // 保存用户列表
     public static void saveUsers(Context context, List<User> users) {
-        FileOutputStream fos = null;
-        ObjectOutputStream oos = null;
+        OutputStream os = null;
         
         try {
-            fos = context.openFileOutput(FILE_NAME, Context.MODE_PRIVATE);
-            oos = new ObjectOutputStream(fos);
-            oos.writeObject(users);
+            os = new BufferedOutputStream(context.openFileOutput(FILE_NAME, Context.MODE_PRIVATE));
+            NoteCodec.writeUsers(os, users);
             Log.d(TAG, "Users saved successfully");
         } catch (IOException e) {
             Log.e(TAG, "Error saving users: " + e.getMessage());
         } finally {
             try {
-                if (oos != null) {
-                    oos.close();
-                }
-                if (fos != null) {
-                    fos.close();
+                if (os != null) {
+                    os.close();
                 }
             } catch (IOException e) {
                 Log.e(TAG, "Error closing streams: " + e.getMessage());
@@ -46,25 +45,24 @@ public class UserStorage {
     
     // 加载用户列表
     public static List<User> loadUsers(Context context) {
-        FileInputStream fis = null;
-        ObjectInputStream ois = null;
+        migrateLegacyUsers(context);
+        InputStream is = null;
         List<User> users = null;
         
         try {
-            fis = context.openFileInput(FILE_NAME);
-            ois = new ObjectInputStream(fis);
-            users = (List<User>) ois.readObject();
+            is = new BufferedInputStream(context.openFileInput(FILE_NAME));
+            if (!NoteCodec.hasMagic(is, NoteCodec.USERS_MAGIC)) {
+                throw new IOException("Unknown users file format");
+            }
+            users = NoteCodec.readUsers(is);
             Log.d(TAG, "Users loaded successfully");
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             Log.d(TAG, "No existing users file, creating new list");
             users = new ArrayList<>();
         } finally {
             try {
-                if (ois != null) {
-                    ois.close();
-                }
-                if (fis != null) {
-                    fis.close();
+                if (is != null) {
+                    is.close();
                 }
             } catch (IOException e) {
                 Log.e(TAG, "Error closing streams: " + e.getMessage());
@@ -74,6 +72,33 @@ public class UserStorage {
         return users != null ? users : new ArrayList<>();
     }
     
+    // 一次性迁移：旧版 users.dat 使用 Java 序列化，转存为新格式后删除
+    private static void migrateLegacyUsers(Context context) {
+        File legacyFile = context.getFileStreamPath(LEGACY_FILE_NAME);
+        if (!legacyFile.exists()) {
+            return;
+        }
+        
+        ObjectInputStream ois = null;
+        try {
+            ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacyFile)));
+            List<User> users = (List<User>) ois.readObject();
+            saveUsers(context, users);
+            legacyFile.delete();
+            Log.d(TAG, "Migrated " + users.size() + " users from legacy format");
+        } catch (IOException | ClassNotFoundException e) {
+            Log.e(TAG, "Error migrating legacy users: " + e.getMessage());
+        } finally {
+            try {
+                if (ois != null) {
+                    ois.close();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing streams: " + e.getMessage());
+            }
+        }
+    }
+    
     // 注册新用户
     public static boolean registerUser(Context context, String username, String password, String email) {
         List<User> users = loadUsers(context);
@@ -139,7 +139,7 @@ public class VoiceSearchActivity extends AppCompatActivity {
                             tvStatus.setText("识别完成");
                             
                             // 自动执行搜索
-                            performSearch(result);
+                            performSearch(matches);
                         }
                         isListening = false;
                         btnStart.setText(getString(R.string.voice_search));
@@ -180,6 +180,7 @@ public class VoiceSearchActivity extends AppCompatActivity {
                 intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
                 intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, "zh-CN");
                 intent.putExtra(RecognizerIntent.EXTRA_PROMPT, "请说话...");
+                intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 5);
                 
                 speechRecognizer.startListening(intent);
             } catch (Exception e) {
@@ -280,7 +281,7 @@ public class VoiceSearchActivity extends AppCompatActivity {
                 String result = matches.get(0);
                 tvResult.setText(result);
                 tvStatus.setText("识别完成");
-                performSearch(result);
+                performSearch(matches);
             }
             isListening = false;
             btnStart.setText(getString(R.string.voice_search));
@@ -301,10 +302,12 @@ public class VoiceSearchActivity extends AppCompatActivity {
         tvStatus.setText("已停止");
     }
 
-    private void performSearch(String query) {
+    // 最可信的结果填入搜索框，全部候选一起交给 MainActivity 做模糊匹配
+    private void performSearch(ArrayList<String> matches) {
         // 返回搜索结果到MainActivity
         Intent resultIntent = new Intent();
-        resultIntent.putExtra("search_query", query);
+        resultIntent.putExtra("search_query", matches.get(0));
+        resultIntent.putStringArrayListExtra("search_alternatives", matches);
         setResult(RESULT_OK, resultIntent);
         finish();
     }
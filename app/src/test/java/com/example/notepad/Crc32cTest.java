@@ -0,0 +1,50 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class Crc32cTest {
+
+    // RFC 3720 附录 B.4 的测试向量
+    @Test
+    public void knownVectors() {
+        assertEquals(0xE3069283, Crc32c.compute("123456789".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0x8A9136AA, Crc32c.compute(new byte[32]));
+
+        byte[] ones = new byte[32];
+        Arrays.fill(ones, (byte) 0xFF);
+        assertEquals(0x62A8AB43, Crc32c.compute(ones));
+
+        byte[] ascending = new byte[32];
+        for (int i = 0; i < ascending.length; i++) {
+            ascending[i] = (byte) i;
+        }
+        assertEquals(0x46DD794E, Crc32c.compute(ascending));
+    }
+
+    @Test
+    public void emptyInput() {
+        assertEquals(0, Crc32c.compute(new byte[0]));
+    }
+
+    @Test
+    public void incrementalAndBufferMatchSinglePass() {
+        byte[] data = "段文件和日志的逐条记录校验".getBytes(StandardCharsets.UTF_8);
+        int expected = Crc32c.compute(data);
+
+        int crc = Crc32c.start();
+        crc = Crc32c.update(crc, data, 0, 5);
+        crc = Crc32c.update(crc, data, 5, data.length - 5);
+        assertEquals(expected, Crc32c.finish(crc));
+
+        byte[] padded = new byte[data.length + 6];
+        System.arraycopy(data, 0, padded, 3, data.length);
+        assertEquals(expected, Crc32c.compute(padded, 3, data.length));
+        assertEquals(expected, Crc32c.compute(ByteBuffer.wrap(padded), 3, data.length));
+    }
+}
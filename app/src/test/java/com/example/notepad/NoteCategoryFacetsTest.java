@@ -0,0 +1,97 @@
+package com.example.notepad;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteCategoryFacetsTest {
+    // 每个分类最后一次通知的数量
+    private final Map<String, Integer> notified = new HashMap<>();
+    private NoteCategoryFacets facets;
+
+    @Before
+    public void setUp() {
+        facets = new NoteCategoryFacets(notified::put);
+    }
+
+    @Test
+    public void seedNotifiesEveryCategory() {
+        assertTrue(facets.seed(counts("工作", 2, "默认", 1), facets.getVersion()));
+        assertEquals(Integer.valueOf(2), notified.get("工作"));
+        assertEquals(Integer.valueOf(1), notified.get("默认"));
+        assertEquals(3, facets.getTotal());
+    }
+
+    @Test
+    public void reseedReportsRemovedCategoriesAsZero() {
+        facets.seed(counts("工作", 2, "默认", 1), facets.getVersion());
+        notified.clear();
+
+        facets.seed(counts("工作", 2), facets.getVersion());
+        assertEquals(Integer.valueOf(0), notified.get("默认"));
+        // 没变的分类不通知
+        assertNull(notified.get("工作"));
+        assertEquals(2, facets.getTotal());
+    }
+
+    @Test
+    public void savesMoveCountsBetweenCategories() {
+        facets.seed(counts("工作", 2, "默认", 1), facets.getVersion());
+
+        facets.onSaved(null, "生活");
+        assertEquals(Integer.valueOf(1), notified.get("生活"));
+        assertEquals(4, facets.getTotal());
+
+        facets.onSaved("工作", "默认");
+        assertEquals(Integer.valueOf(1), notified.get("工作"));
+        assertEquals(Integer.valueOf(2), notified.get("默认"));
+        assertEquals(4, facets.getTotal());
+
+        notified.clear();
+        facets.onSaved("默认", "默认");
+        assertTrue(notified.isEmpty());
+    }
+
+    @Test
+    public void deletingLastNoteOfCategoryReportsZero() {
+        facets.seed(counts("工作", 1), facets.getVersion());
+        facets.onDeleted("工作");
+        assertEquals(Integer.valueOf(0), notified.get("工作"));
+        assertEquals(0, facets.getTotal());
+    }
+
+    @Test
+    public void seedComputedBeforeADeltaIsRejected() {
+        int since = facets.getVersion();
+        facets.onSaved(null, "工作");
+
+        // 统计可能已经包含刚才的保存，不能再叠加
+        assertFalse(facets.seed(counts("工作", 1), since));
+        assertEquals(1, facets.getTotal());
+        assertTrue(facets.seed(counts("工作", 1), facets.getVersion()));
+        assertEquals(1, facets.getTotal());
+    }
+
+    @Test
+    public void deleteBeforeSeedIsIgnored() {
+        facets.onDeleted("工作");
+        assertEquals(0, facets.getTotal());
+        assertTrue(notified.isEmpty());
+    }
+
+    private static Map<String, Integer> counts(Object... pairs) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            counts.put((String) pairs[i], (Integer) pairs[i + 1]);
+        }
+        return counts;
+    }
+}
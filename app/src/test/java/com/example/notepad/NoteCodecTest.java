@@ -0,0 +1,143 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NoteCodecTest {
+
+    @Test
+    public void noteRoundTripKeepsEveryField() throws IOException {
+        Note note = fullNote(7);
+        Note copy = NoteCodec.decodeNote(NoteCodec.encodeNote(note));
+        assertSameNote(note, copy);
+
+        Note plain = new Note(8, "只有标题", "");
+        copy = NoteCodec.decodeNote(NoteCodec.encodeNote(plain));
+        assertNull(copy.getReminderDate());
+        assertNull(copy.getPassword());
+        assertFalse(copy.isTodo());
+    }
+
+    @Test
+    public void notesFileRoundTripWithCompressedContent() throws IOException {
+        List<Note> notes = NoteCompressionTest.notes("周报", 20);
+        notes.add(fullNote(100));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NoteCodec.writeNotes(out, notes);
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertTrue(NoteCodec.hasMagic(in, NoteCodec.NOTES_MAGIC));
+        List<Note> copies = NoteCodec.readNotes(in);
+        assertEquals(notes.size(), copies.size());
+        for (int i = 0; i < notes.size(); i++) {
+            assertSameNote(notes.get(i), copies.get(i));
+        }
+    }
+
+    @Test
+    public void newerRecordsSkipUnknownTrailingFields() throws IOException {
+        byte[] record = NoteCodec.encodeNote(fullNote(1));
+        InputStream frame = new ByteArrayInputStream(record);
+        assertEquals(NoteCodec.NOTE_VERSION, NoteCodec.readVarLong(frame));
+        byte[] body = new byte[(int) NoteCodec.readVarLong(frame)];
+        assertEquals(body.length, frame.read(body));
+
+        // 更新的版本在末尾追加了字段
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NoteCodec.writeVarLong(stream, NoteCodec.NOTE_VERSION + 1);
+        NoteCodec.writeVarLong(stream, body.length + 3);
+        stream.write(body);
+        NoteCodec.writeVarLong(stream, 300);
+        stream.write(0x7F);
+        stream.write(NoteCodec.encodeNote(fullNote(2)));
+
+        InputStream in = new ByteArrayInputStream(stream.toByteArray());
+        assertSameNote(fullNote(1), NoteCodec.readNote(in));
+        // 跳过的字段不影响后面的记录
+        assertSameNote(fullNote(2), NoteCodec.readNote(in));
+    }
+
+    @Test
+    public void unsupportedFileVersionIsRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NoteCodec.writeVarLong(out, NoteCodec.FILE_VERSION + 1);
+        try {
+            NoteCodec.readNotes(new ByteArrayInputStream(out.toByteArray()));
+            fail();
+        } catch (IOException expected) {
+            // 新版本的文件格式可能不兼容，整体拒绝
+        }
+    }
+
+    @Test
+    public void varLongRoundTrip() throws IOException {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, System.currentTimeMillis(), Long.MAX_VALUE, -1};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            NoteCodec.writeVarLong(out, value);
+        }
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        List<Long> read = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            read.add(NoteCodec.readVarLong(in));
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], (long) read.get(i));
+        }
+        assertEquals(-1, in.read());
+    }
+
+    private static Note fullNote(long id) {
+        Note note = new Note(id, "标题" + id, NoteCompressionTest.longContent("会议", (int) id));
+        note.setCategory("工作");
+        note.setFolder("项目");
+        note.setPriority(2);
+        note.setColor("#FF0000");
+        note.setImagePath("/images/" + id + ".jpg");
+        note.setAudioPath("/audio/" + id + ".m4a");
+        note.setVideoPath("");
+        note.setReminderDate(new Date(1700000000000L + id));
+        note.setPassword("secret");
+        note.setLocked(true);
+        note.setTodo(true);
+        note.setStickyNote(true);
+        note.setCompleted(true);
+        note.setDate(new Date(1600000000000L + id));
+        note.setModifiedDate(new Date(1650000000000L + id));
+        return note;
+    }
+
+    private static void assertSameNote(Note expected, Note actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getContent(), actual.getContent());
+        assertEquals(expected.getDate(), actual.getDate());
+        assertEquals(expected.getModifiedDate(), actual.getModifiedDate());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getFolder(), actual.getFolder());
+        assertEquals(expected.getPriority(), actual.getPriority());
+        assertEquals(expected.getColor(), actual.getColor());
+        assertEquals(expected.getImagePath(), actual.getImagePath());
+        assertEquals(expected.getAudioPath(), actual.getAudioPath());
+        assertEquals(expected.getVideoPath(), actual.getVideoPath());
+        assertEquals(expected.getReminderDate(), actual.getReminderDate());
+        assertEquals(expected.getPassword(), actual.getPassword());
+        assertEquals(expected.isLocked(), actual.isLocked());
+        assertEquals(expected.isTodo(), actual.isTodo());
+        assertEquals(expected.isStickyNote(), actual.isStickyNote());
+        assertEquals(expected.isCompleted(), actual.isCompleted());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NoteCompressionTest {
+
+    @Test
+    public void shortContentIsStoredRaw() throws IOException {
+        byte[] payload = NoteCompression.encode("短正文", null);
+        assertNull(NoteCompression.compress("短正文", null));
+        assertEquals("短正文", NoteCompression.decode(payload, null));
+        assertEquals("短正文".getBytes("UTF-8").length, NoteCompression.rawLength(payload));
+    }
+
+    @Test
+    public void roundTripWithoutDictionary() throws IOException {
+        String content = longContent("会议记录", 0);
+        byte[] payload = NoteCompression.compress(content, null);
+        assertNotNull(payload);
+        assertTrue(payload.length < content.getBytes("UTF-8").length);
+        assertEquals(content, NoteCompression.decode(payload, null));
+        assertEquals(content.getBytes("UTF-8").length, NoteCompression.rawLength(payload));
+    }
+
+    @Test
+    public void roundTripWithDictionary() throws IOException {
+        NoteCompression.Dictionary dictionary = NoteCompression.train(notes("会议记录", 20), null);
+        assertNotNull(dictionary);
+        String content = longContent("会议记录", 99);
+        byte[] withDictionary = NoteCompression.compress(content, dictionary.bytes);
+        byte[] without = NoteCompression.compress(content, null);
+        assertTrue(withDictionary.length <= without.length);
+        assertEquals(content, NoteCompression.decode(withDictionary, dictionary.bytes));
+    }
+
+    @Test
+    public void wrongOrMissingDictionaryFails() {
+        byte[] dictionary = NoteCompression.train(notes("会议记录", 20));
+        byte[] other = NoteCompression.train(notes("购物清单", 20));
+        byte[] payload = NoteCompression.compress(longContent("会议记录", 99), dictionary);
+        try {
+            NoteCompression.decode(payload, other);
+            fail("decoding with another dictionary must fail");
+        } catch (IOException expected) {
+            // zlib 头中的 Adler-32 与字典不符
+        }
+        try {
+            NoteCompression.decode(payload, null);
+            fail("decoding without the dictionary must fail");
+        } catch (IOException expected) {
+            // 缺少字典
+        }
+    }
+
+    @Test
+    public void onlyDictionaryPayloadsDependOnDictionaryId() {
+        NoteCompression.Dictionary dictionary = NoteCompression.train(notes("会议记录", 20), null);
+        NoteCompression.Dictionary retrained = NoteCompression.train(notes("会议记录", 20), dictionary);
+        assertTrue(retrained.id > dictionary.id);
+
+        byte[] withDictionary = NoteCompression.encode(longContent("会议记录", 99), dictionary.bytes);
+        assertTrue(NoteCompression.isReusable(withDictionary, dictionary.id, dictionary));
+        assertFalse(NoteCompression.isReusable(withDictionary, dictionary.id, retrained));
+        assertFalse(NoteCompression.isReusable(withDictionary, dictionary.id, null));
+
+        byte[] plain = NoteCompression.encode(longContent("会议记录", 99), null);
+        assertTrue(NoteCompression.isReusable(plain, 0, retrained));
+        assertTrue(NoteCompression.isReusable(NoteCompression.encode("短正文", null), 0, null));
+    }
+
+    @Test
+    public void driftIsMeasuredAgainstBaseline() {
+        NoteCompression.Dictionary dictionary = new NoteCompression.Dictionary(1, new byte[16], 300);
+        assertFalse(NoteCompression.hasDrifted(dictionary, 350));
+        assertTrue(NoteCompression.hasDrifted(dictionary, 400));
+        // 没有基准或样本太少时不判断
+        assertFalse(NoteCompression.hasDrifted(dictionary.withBaseline(0), 900));
+        assertEquals(0, NoteCompression.ratio(100, 1000));
+        assertEquals(250, NoteCompression.ratio(32 * 1024, 128 * 1024));
+    }
+
+    static List<Note> notes(String topic, int count) {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            notes.add(new Note(i + 1, topic + i, longContent(topic, i)));
+        }
+        return notes;
+    }
+
+    static String longContent(String topic, int seed) {
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 30; line++) {
+            content.append(topic).append("：第").append(seed).append("篇的第").append(line)
+                    .append("项，这是每篇笔记都会出现的固定格式文字。\n");
+        }
+        return content.toString();
+    }
+}
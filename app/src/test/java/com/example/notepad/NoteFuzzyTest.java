@@ -0,0 +1,97 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NoteFuzzyTest {
+
+    @Test
+    public void similarFindsTyposTranspositionsAndPrefixes() {
+        NoteFuzzy.TermIndex index = new NoteFuzzy.TermIndex();
+        for (String term : Arrays.asList("meeting", "meetings", "greeting", "monday", "report", "重要")) {
+            index.add(term);
+        }
+
+        Map<String, Float> typo = index.similar("meetng");
+        assertTrue(typo.containsKey("meeting"));
+        assertTrue(typo.containsKey("meetings"));
+        assertFalse(typo.containsKey("monday"));
+
+        // 相邻两字符对调算一次编辑
+        assertTrue(index.similar("rpeort").containsKey("report"));
+        // 按前缀匹配，完全相同的前缀相似度为 1
+        assertEquals(1f, index.similar("repo").get("report"), 0f);
+        // 短词不做模糊匹配，只认完全相同的词
+        assertTrue(index.similar("me").isEmpty());
+        // 中日韩文字的词不进入二元组索引
+        assertTrue(index.similar("重要").isEmpty());
+    }
+
+    @Test
+    public void removedTermsAreSkippedAndCanComeBack() {
+        NoteFuzzy.TermIndex index = new NoteFuzzy.TermIndex();
+        index.add("project");
+        index.remove("project");
+        assertTrue(index.similar("projct").isEmpty());
+
+        index.add("project");
+        assertTrue(index.similar("projct").containsKey("project"));
+
+        index.clear();
+        assertTrue(index.similar("projct").isEmpty());
+    }
+
+    @Test
+    public void similarKeepsTheClosestTerms() {
+        NoteFuzzy.TermIndex index = new NoteFuzzy.TermIndex();
+        index.add("abcdefgh");
+        for (int i = 0; i < NoteFuzzy.MAX_SIMILAR_TERMS * 2; i++) {
+            // 与查询词差两处
+            index.add("abcdefgh".substring(0, 6) + (char) ('a' + i % 26) + (char) ('a' + i / 26) + "zz");
+        }
+        Map<String, Float> similar = index.similar("abcdefgh");
+        assertEquals(NoteFuzzy.MAX_SIMILAR_TERMS, similar.size());
+        assertEquals(1f, similar.get("abcdefgh"), 0f);
+    }
+
+    @Test
+    public void rareTermsWeighMoreThanCommonOnes() {
+        // 两个词起初各只有一篇笔记有，第二个词之后变成三篇笔记都有
+        List<Map<Long, Float>> matches = new ArrayList<>();
+        matches.add(Collections.singletonMap(1L, 1f));
+        Map<Long, Float> common = new HashMap<>();
+        common.put(2L, 1f);
+        matches.add(common);
+        Map<Long, Float> scores = NoteFuzzy.score(matches, 10);
+        assertEquals(0.5f, scores.get(1L), 0.001f);
+        assertEquals(0.5f, scores.get(2L), 0.001f);
+
+        common.put(3L, 1f);
+        common.put(4L, 1f);
+        scores = NoteFuzzy.score(matches, 10);
+        assertTrue(scores.get(1L) > scores.get(2L));
+    }
+
+    @Test
+    public void rankKeepsBestScoreAndDiscountsLaterAlternatives() {
+        Map<Long, Float> first = new HashMap<>();
+        first.put(1L, 0.6f);
+        first.put(2L, 0.4f);
+        Map<Long, Float> second = new HashMap<>();
+        second.put(2L, 0.9f);
+        second.put(3L, 0.52f);
+        // 笔记 3 打折后低于下限
+        assertArrayEquals(new long[]{2L, 1L}, NoteFuzzy.rank(Arrays.asList(first, second)));
+    }
+}
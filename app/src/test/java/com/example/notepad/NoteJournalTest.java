@@ -0,0 +1,112 @@
+package com.example.notepad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NoteJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayAppliesUpsertsAndDeletesInOrder() throws IOException {
+        NoteJournal journal = new NoteJournal(folder.newFile("notes.journal.0"));
+        Note first = note(1, "第一条");
+        Note second = note(2, "第二条");
+        journal.appendAll(changes(first, second));
+        first.setTitle("第一条（改）");
+        Map<Long, Note> update = changes(first);
+        update.put(2L, null);
+        journal.appendAll(update);
+
+        LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+        assertEquals(4, journal.replay(notesById));
+        assertEquals(1, notesById.size());
+        assertEquals("第一条（改）", notesById.get(1L).getTitle());
+        assertEquals("第一条的正文", notesById.get(1L).getContent());
+    }
+
+    @Test
+    public void truncatedTailIsDropped() throws IOException {
+        File file = folder.newFile("notes.journal.0");
+        NoteJournal journal = new NoteJournal(file);
+        journal.appendAll(changes(note(1, "第一条")));
+        long intact = file.length();
+        journal.appendAll(changes(note(2, "第二条")));
+        // 写到一半断电：最后一条只留下一部分
+        truncate(file, intact + (file.length() - intact) / 2);
+
+        LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+        assertEquals(1, journal.replay(notesById));
+        assertTrue(notesById.containsKey(1L));
+        assertFalse(notesById.containsKey(2L));
+    }
+
+    @Test
+    public void corruptRecordIsSkippedAndLaterRecordsReplayed() throws IOException {
+        File file = folder.newFile("notes.journal.0");
+        NoteJournal journal = new NoteJournal(file);
+        journal.appendAll(changes(note(1, "第一条")));
+        long secondStart = file.length();
+        journal.appendAll(changes(note(2, "第二条")));
+        long thirdStart = file.length();
+        journal.appendAll(changes(note(3, "第三条")));
+        // 第二条的内容中间坏了一个字节
+        flip(file, secondStart + (thirdStart - secondStart) / 2);
+
+        LinkedHashMap<Long, Note> notesById = new LinkedHashMap<>();
+        assertEquals(2, journal.replay(notesById));
+        assertTrue(notesById.containsKey(1L));
+        assertFalse(notesById.containsKey(2L));
+        assertEquals("第三条", notesById.get(3L).getTitle());
+    }
+
+    @Test
+    public void missingJournalReplaysNothing() {
+        NoteJournal journal = new NoteJournal(new File(folder.getRoot(), "notes.journal.9"));
+        assertEquals(0, journal.replay(new LinkedHashMap<>()));
+    }
+
+    static Note note(long id, String title) {
+        return new Note(id, title, title + "的正文");
+    }
+
+    private static Map<Long, Note> changes(Note... notes) {
+        Map<Long, Note> changes = new LinkedHashMap<>();
+        for (Note note : notes) {
+            changes.put(note.getId(), note);
+        }
+        return changes;
+    }
+
+    static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    static void flip(File file, long position) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotePagerTest {
+
+    @Test
+    public void loadReadsEachPageAfterTheLastOfThePreviousOne() {
+        NavigableSet<NoteSummary> notes = byTime();
+        for (int i = 0; i < NotePager.PAGE_SIZE * 2 + 20; i++) {
+            notes.add(summary(i, 1000 - i));
+        }
+        List<NoteSummary> shown = submit(NotePager.load(source(notes, null), notes.size(), 0));
+        assertEquals(new ArrayList<>(notes), shown);
+    }
+
+    @Test
+    public void insertsWhilePagingNeitherRepeatNorSkipNotes() {
+        NavigableSet<NoteSummary> notes = byTime();
+        for (int i = 0; i < NotePager.PAGE_SIZE * 2; i++) {
+            notes.add(summary(i, 1000 - i));
+        }
+        List<NoteSummary> original = new ArrayList<>(notes);
+        NoteSummary boundary = original.get(NotePager.PAGE_SIZE - 1);
+        // 读完第一页后插入：一条排在最前面，一条与第一页最后一条同时修改、按ID排在它后面，一条排在最后
+        Runnable insert = () -> {
+            notes.add(summary(500, 2000));
+            notes.add(summary(501, boundary.getModifiedDate().getTime()));
+            notes.add(summary(502, 1));
+        };
+        List<NoteSummary> shown = submit(NotePager.load(source(notes, insert), notes.size() + 3, 0));
+
+        Set<Long> ids = new HashSet<>();
+        for (NoteSummary summary : shown) {
+            assertTrue(ids.add(summary.getId()));
+        }
+        assertEquals(original.subList(0, NotePager.PAGE_SIZE), shown.subList(0, NotePager.PAGE_SIZE));
+        // 插到已读部分之前的那条要等整体刷新才出现
+        assertFalse(ids.contains(500L));
+        assertEquals(501, shown.get(NotePager.PAGE_SIZE).getId());
+        assertEquals(original.get(NotePager.PAGE_SIZE), shown.get(NotePager.PAGE_SIZE + 1));
+        assertEquals(502, shown.get(shown.size() - 1).getId());
+        assertEquals(NotePager.PAGE_SIZE * 2 + 2, shown.size());
+    }
+
+    @Test
+    public void listSourceKeepsTheGivenOrder() {
+        List<NoteSummary> notes = Arrays.asList(summary(3, 1), summary(1, 3), summary(2, 2));
+        NotePager.Source source = NotePager.listSource(notes);
+        assertEquals(notes.subList(0, 2), source.load(null, 2));
+        assertEquals(notes.subList(2, 3), source.load(notes.get(1), 2));
+        assertTrue(source.load(notes.get(2), 2).isEmpty());
+        // after 已不在列表中时读不到后续的页
+        assertTrue(source.load(summary(9, 9), 2).isEmpty());
+    }
+
+    @Test
+    public void emptyRereadOfAnEvictedPageStopsFetching() throws InterruptedException {
+        NavigableSet<NoteSummary> notes = byTime();
+        for (int i = 0; i < NotePager.PAGE_SIZE * 10; i++) {
+            notes.add(summary(i, 10000 - i));
+        }
+        final int[] loads = {0};
+        NotePager.Source counting = source(notes, null);
+        NotePager.Source source = (after, limit) -> {
+            loads[0]++;
+            return counting.load(after, limit);
+        };
+        // 停在最后一页，前面的页只留下边界
+        NotePager.Pages pages = NotePager.load(source, notes.size(), notes.size() - 1);
+        BlockingQueue<Runnable> main = new LinkedBlockingQueue<>();
+        List<List<NoteSummary>> published = new ArrayList<>();
+        NotePager pager = new NotePager(published::add, main::add);
+        pager.submit(pages);
+        // 预取到结尾
+        drain(main);
+
+        // 全部删除后、整体刷新之前滚回顶部，重读的页都是空的
+        notes.clear();
+        loads[0] = 0;
+        pager.onVisibleRange(0, 10);
+        int rounds = drain(main);
+        pager.shutdown();
+
+        // 重读可见的两页，丢掉后从头接着读一次，读到空页为止
+        assertTrue(rounds < 100);
+        assertEquals(3, loads[0]);
+        assertTrue(published.get(published.size() - 1).isEmpty());
+        assertEquals(0, pager.size());
+    }
+
+    // 执行交回主线程的读取结果，直到没有新的读取；返回执行的个数，最多 100 个
+    private static int drain(BlockingQueue<Runnable> main) throws InterruptedException {
+        int rounds = 0;
+        for (Runnable task; rounds < 100 && (task = main.poll(500, TimeUnit.MILLISECONDS)) != null; rounds++) {
+            task.run();
+        }
+        return rounds;
+    }
+
+    private static List<NoteSummary> submit(NotePager.Pages pages) {
+        List<List<NoteSummary>> published = new ArrayList<>();
+        NotePager pager = new NotePager(published::add);
+        pager.submit(pages);
+        pager.shutdown();
+        return published.get(published.size() - 1);
+    }
+
+    // 按时间排序的键集分页；afterFirstPage 在读出第一页之后执行一次
+    private static NotePager.Source source(NavigableSet<NoteSummary> notes, Runnable afterFirstPage) {
+        final Runnable[] pending = {afterFirstPage};
+        return (after, limit) -> {
+            List<NoteSummary> page = new ArrayList<>();
+            for (NoteSummary summary : after == null ? notes : notes.tailSet(after, false)) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(summary);
+            }
+            if (pending[0] != null) {
+                pending[0].run();
+                pending[0] = null;
+            }
+            return page;
+        };
+    }
+
+    private static NavigableSet<NoteSummary> byTime() {
+        return new TreeSet<>(NoteRepository.summaryComparator(NoteRepository.SORT_BY_TIME));
+    }
+
+    private static NoteSummary summary(long id, long modified) {
+        return new NoteSummary(id, "笔记" + id, "", new Date(modified), new Date(modified), null, 0, 0, null);
+    }
+}
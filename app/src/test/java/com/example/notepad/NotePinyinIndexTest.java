@@ -0,0 +1,57 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+
+// 单元测试中 Build.VERSION.SDK_INT 为 0，NotePinyin 走排序规则的分支，只生成首字母词
+public class NotePinyinIndexTest {
+
+    @Test
+    public void searchMatchesTokenPrefixes() {
+        NotePinyinIndex index = new NotePinyinIndex();
+        index.put(note(3, "工作计划", "工作"));
+        index.put(note(1, "购物清单", "生活"));
+        index.put(note(2, "读书笔记", "学习"));
+
+        assertArrayEquals(new long[]{3}, index.search("gzjh"));
+        assertArrayEquals(new long[]{1, 3}, index.search("G"));
+        // 分类也参与匹配
+        assertArrayEquals(new long[]{2}, index.search("xx"));
+        assertArrayEquals(new long[0], index.search("zzz"));
+        assertArrayEquals(new long[0], index.search("工作"));
+    }
+
+    @Test
+    public void putReplacesAndRemoveDropsTokens() {
+        NotePinyinIndex index = new NotePinyinIndex();
+        Note note = note(1, "工作计划", "");
+        index.put(note);
+        index.put(note(2, "工作总结", ""));
+        assertArrayEquals(new long[]{1, 2}, index.search("gz"));
+
+        note.setTitle("读书笔记");
+        index.put(note);
+        assertArrayEquals(new long[]{2}, index.search("gz"));
+        assertArrayEquals(new long[]{1}, index.search("dsbj"));
+
+        index.remove(2);
+        assertArrayEquals(new long[0], index.search("gz"));
+
+        index.put(note(2, "工作总结", ""));
+        index.retainAll(Arrays.asList(2L));
+        assertArrayEquals(new long[0], index.search("dsbj"));
+        assertArrayEquals(new long[]{2}, index.search("gzzj"));
+
+        index.clear();
+        assertArrayEquals(new long[0], index.search("g"));
+    }
+
+    private static Note note(long id, String title, String category) {
+        Note note = new Note(id, title, "");
+        note.setCategory(category);
+        return note;
+    }
+}
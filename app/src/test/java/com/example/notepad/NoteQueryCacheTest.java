@@ -0,0 +1,266 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class NoteQueryCacheTest {
+    private static final int LIMIT = 3;
+
+    @Test
+    public void repeatedQueriesHitTheCache() {
+        FakeRepository repository = new FakeRepository("meeting", "memo", "menu", "plan");
+        NoteQueryCache cache = new NoteQueryCache();
+        List<NoteSummary> first = cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertSame(first, cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT));
+        assertEquals(1, repository.queries);
+        // 分类、排序方式不同是不同的查询
+        cache.query(repository, "工作", false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TITLE, LIMIT);
+        assertEquals(3, repository.queries);
+    }
+
+    @Test
+    public void longerQueriesRefineTheCachedPage() {
+        FakeRepository repository = new FakeRepository("meeting", "memo", "menu", "meet up", "meeting notes", "plan");
+        NoteQueryCache cache = new NoteQueryCache();
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        repository.queries = 0;
+
+        List<NoteSummary> refined = cache.query(repository, null, false, "mee", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(1, repository.narrows);
+        // 旧页是满的，细化后不足一页，从旧页最后一条之后接着查
+        assertEquals(1, repository.queries);
+        assertEquals(titles(repository.querySummaries(null, false, "mee", NoteRepository.SORT_BY_TIME, null, LIMIT)),
+                titles(refined));
+
+        // 删字回退直接命中之前的结果
+        repository.queries = 0;
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(0, repository.queries);
+    }
+
+    @Test
+    public void partialPagesRefineWithoutQuerying() {
+        FakeRepository repository = new FakeRepository("meeting", "memo", "plan");
+        NoteQueryCache cache = new NoteQueryCache();
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        repository.queries = 0;
+        List<NoteSummary> refined = cache.query(repository, null, false, "mee", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(Collections.singletonList("meeting"), titles(refined));
+        assertEquals(0, repository.queries);
+    }
+
+    @Test
+    public void relevanceAndFieldQueriesAreNotRefined() {
+        FakeRepository repository = new FakeRepository("meeting", "memo");
+        NoteQueryCache cache = new NoteQueryCache();
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_RELEVANCE, LIMIT);
+        cache.query(repository, null, false, "mee", NoteRepository.SORT_BY_RELEVANCE, LIMIT);
+        // 只有标点的前缀按子串匹配，加上文字后结果不是它的子集
+        cache.query(repository, null, false, "-", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.query(repository, null, false, "-m", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.query(repository, null, false, "", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.query(repository, null, false, "todo:open", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(0, repository.narrows);
+    }
+
+    @Test
+    public void pinyinMatchesAreNotDroppedByRefinement() {
+        FakeRepository repository = new FakeRepository("工作计划", "good");
+        repository.pinyin.put(1L, "gzjh");
+        NoteQueryCache cache = new NoteQueryCache();
+        // 单个字母不按拼音查
+        assertEquals(Collections.singletonList("good"),
+                titles(cache.query(repository, null, false, "g", NoteRepository.SORT_BY_TIME, LIMIT)));
+        assertEquals(Collections.singletonList("工作计划"),
+                titles(cache.query(repository, null, false, "gz", NoteRepository.SORT_BY_TIME, LIMIT)));
+        assertEquals(0, repository.narrows);
+        // 两边都按拼音查时可以细化
+        assertEquals(Collections.singletonList("工作计划"),
+                titles(cache.query(repository, null, false, "gzjh", NoteRepository.SORT_BY_TIME, LIMIT)));
+        assertEquals(1, repository.narrows);
+    }
+
+    @Test
+    public void invalidationDuringAQueryKeepsItsResultOutOfTheCache() {
+        FakeRepository repository = new FakeRepository("meeting", "memo");
+        NoteQueryCache cache = new NoteQueryCache();
+        repository.duringQuery = cache::invalidate;
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(2, repository.queries);
+
+        repository.duringQuery = null;
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        cache.invalidate();
+        cache.query(repository, null, false, "me", NoteRepository.SORT_BY_TIME, LIMIT);
+        assertEquals(4, repository.queries);
+    }
+
+    private static List<String> titles(List<NoteSummary> summaries) {
+        List<String> titles = new ArrayList<>();
+        for (NoteSummary summary : summaries) {
+            titles.add(summary.getTitle());
+        }
+        return titles;
+    }
+
+    // 按标题子串匹配关键字，拼音查询再按 pinyin 里的首字母前缀匹配；记录查询和细化的次数
+    private static class FakeRepository implements NoteRepository {
+        final List<NoteSummary> summaries = new ArrayList<>();
+        final Map<Long, String> pinyin = new HashMap<>();
+        int queries;
+        int narrows;
+        Runnable duringQuery;
+
+        FakeRepository(String... titles) {
+            for (int i = 0; i < titles.length; i++) {
+                // 越靠前的越新
+                summaries.add(new NoteSummary(i + 1, titles[i], "", new Date(1000 - i), new Date(1000 - i),
+                        null, 0, 0, null));
+            }
+        }
+
+        @Override
+        public List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode,
+                                                NoteSummary after, int limit) {
+            queries++;
+            if (duringQuery != null) {
+                duringQuery.run();
+            }
+            List<NoteSummary> result = new ArrayList<>();
+            boolean started = after == null;
+            for (NoteSummary summary : summaries) {
+                if (started && result.size() < limit && matches(summary, text)
+                        && (category == null || category.equals(summary.getCategory()))) {
+                    result.add(summary);
+                }
+                started |= after != null && summary.getId() == after.getId();
+            }
+            return result;
+        }
+
+        @Override
+        public List<NoteSummary> narrowSummaries(List<NoteSummary> candidates, String text) {
+            narrows++;
+            List<NoteSummary> result = new ArrayList<>();
+            for (NoteSummary summary : candidates) {
+                if (matches(summary, text)) {
+                    result.add(summary);
+                }
+            }
+            return result;
+        }
+
+        private boolean matches(NoteSummary summary, String text) {
+            for (NoteQuery.Predicate predicate : NoteQuery.parse(text).getPredicates()) {
+                if (predicate.field == NoteQuery.FIELD_TEXT && !summary.getTitle().contains(predicate.text)
+                        && !matchesPinyin(summary, predicate.text)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesPinyin(NoteSummary summary, String text) {
+            String initials = pinyin.get(summary.getId());
+            return NotePinyin.isPinyinQuery(text) && initials != null && initials.startsWith(text);
+        }
+
+        @Override
+        public List<NoteSummary> querySummaries(String category, boolean todoOnly, String text, int sortMode) {
+            return querySummaries(category, todoOnly, text, sortMode, null, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public Note getNote(long id) {
+            return null;
+        }
+
+        @Override
+        public boolean contains(long id) {
+            return false;
+        }
+
+        @Override
+        public List<Note> getAll() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public int size() {
+            return summaries.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return summaries.isEmpty();
+        }
+
+        @Override
+        public Map<String, Integer> getCategoryCounts() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public List<NoteSummary> getSummaries() {
+            return new ArrayList<>(summaries);
+        }
+
+        @Override
+        public List<NoteSummary> fuzzySummaries(List<String> alternatives, String category, boolean todoOnly) {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public void save(Note note) {
+        }
+
+        @Override
+        public void delete(long id) {
+        }
+
+        @Override
+        public void replaceAll(List<Note> notes) {
+        }
+
+        @Override
+        public void addObserver(Observer observer) {
+        }
+
+        @Override
+        public void removeObserver(Observer observer) {
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+
+        @Override
+        public void executeWithNotes(NotesTask task) {
+            task.run(getAll());
+        }
+
+        @Override
+        public void flushAsync() {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NoteQueryTest {
+
+    @Test
+    public void parsesKeywordsPhrasesAndNegation() {
+        List<NoteQuery.Predicate> predicates = NoteQuery.parse("  Hello \"会议 纪要\" -草稿 -\"旧 版\"  ").getPredicates();
+        assertEquals(4, predicates.size());
+        assertPredicate(predicates.get(0), NoteQuery.FIELD_TEXT, false, "hello");
+        assertPredicate(predicates.get(1), NoteQuery.FIELD_PHRASE, false, "会议 纪要");
+        assertPredicate(predicates.get(2), NoteQuery.FIELD_TEXT, true, "草稿");
+        assertPredicate(predicates.get(3), NoteQuery.FIELD_PHRASE, true, "旧 版");
+        assertEquals(Arrays.asList("hello", "会议 纪要"), NoteQuery.parse("Hello \"会议 纪要\" -草稿").getPositiveTexts());
+    }
+
+    @Test
+    public void parsesFieldsAndAliases() {
+        List<NoteQuery.Predicate> predicates = NoteQuery.parse(
+                "category:\"个人 计划\" 分类:工作 priority:high 优先级:低 todo:open 待办:已完成 has:image -有:提醒")
+                .getPredicates();
+        assertPredicate(predicates.get(0), NoteQuery.FIELD_CATEGORY, false, "个人 计划");
+        assertPredicate(predicates.get(1), NoteQuery.FIELD_CATEGORY, false, "工作");
+        assertValue(predicates.get(2), NoteQuery.FIELD_PRIORITY, 2);
+        assertValue(predicates.get(3), NoteQuery.FIELD_PRIORITY, 0);
+        assertValue(predicates.get(4), NoteQuery.FIELD_TODO, NoteQuery.TODO_OPEN);
+        assertValue(predicates.get(5), NoteQuery.FIELD_TODO, NoteQuery.TODO_DONE);
+        assertValue(predicates.get(6), NoteQuery.FIELD_HAS, NoteQuery.HAS_IMAGE);
+        assertValue(predicates.get(7), NoteQuery.FIELD_HAS, NoteQuery.HAS_REMINDER);
+        assertTrue(predicates.get(7).negated);
+        assertFalse(NoteQuery.parse("category:工作").isPlainText());
+    }
+
+    @Test
+    public void unknownFieldsAndValuesAreKeywords() {
+        List<NoteQuery.Predicate> predicates = NoteQuery.parse("todo:maybe color:red http://x priority:").getPredicates();
+        assertPredicate(predicates.get(0), NoteQuery.FIELD_TEXT, false, "todo:maybe");
+        assertPredicate(predicates.get(1), NoteQuery.FIELD_TEXT, false, "color:red");
+        assertPredicate(predicates.get(2), NoteQuery.FIELD_TEXT, false, "http://x");
+        assertPredicate(predicates.get(3), NoteQuery.FIELD_TEXT, false, "priority:");
+        assertTrue(NoteQuery.parse("todo:maybe").isPlainText());
+        // 只有标点的关键字不能交给全文索引
+        assertFalse(NoteQuery.parse("...").getPredicates().get(0).isIndexable());
+        assertTrue(NoteQuery.parse(null).isEmpty());
+        assertTrue(NoteQuery.parse("   ").isEmpty());
+    }
+
+    @Test
+    public void parsesDatesAsLocalMidnight() {
+        NoteQuery query = NoteQuery.parse("after:2024-06 before:2024/06/15 before:2024-06-20 after:2024-13-01");
+        assertEquals(midnight(2024, Calendar.JUNE, 1), query.getAfter());
+        assertEquals(midnight(2024, Calendar.JUNE, 15), query.getBefore());
+        // 无效日期按关键字处理
+        assertPredicate(query.getPredicates().get(3), NoteQuery.FIELD_TEXT, false, "after:2024-13-01");
+        assertEquals(Long.MAX_VALUE, NoteQuery.parse("hello").getBefore());
+        assertEquals(Long.MIN_VALUE, NoteQuery.parse("hello").getAfter());
+    }
+
+    @Test
+    public void predicatesMatchNotes() {
+        Note note = new Note(1, "周会纪要", "讨论 Release 计划");
+        note.setCategory("工作");
+        note.setPriority(2);
+        note.setTodo(true);
+        note.setModifiedDate(new Date(midnight(2024, Calendar.JUNE, 10)));
+
+        assertTrue(matchesAll("release 周会", note));
+        assertTrue(matchesAll("category:工作 priority:high todo:open", note));
+        assertTrue(matchesAll("after:2024-06-01 before:2024-06-11 -has:image", note));
+        assertFalse(matchesAll("todo:done", note));
+        assertFalse(matchesAll("-纪要", note));
+        assertFalse(matchesAll("before:2024-06-10", note));
+    }
+
+    @Test
+    public void metadataPredicatesAreCheckedFirst() {
+        List<NoteQuery.Predicate> sorted = NoteQuery.byCost(NoteQuery.parse("关键字 \"短语\" todo:open").getPredicates());
+        assertEquals(NoteQuery.FIELD_TODO, sorted.get(0).field);
+        assertEquals(NoteQuery.FIELD_TEXT, sorted.get(1).field);
+        assertEquals(NoteQuery.FIELD_PHRASE, sorted.get(2).field);
+    }
+
+    private static boolean matchesAll(String query, Note note) {
+        for (NoteQuery.Predicate predicate : NoteQuery.parse(query).getPredicates()) {
+            if (!predicate.matches(note)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long midnight(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month, day);
+        return calendar.getTimeInMillis();
+    }
+
+    private static void assertPredicate(NoteQuery.Predicate predicate, int field, boolean negated, String text) {
+        assertEquals(field, predicate.field);
+        assertEquals(negated, predicate.negated);
+        assertEquals(text, predicate.text);
+    }
+
+    private static void assertValue(NoteQuery.Predicate predicate, int field, long value) {
+        assertEquals(field, predicate.field);
+        assertEquals(value, predicate.value);
+    }
+}
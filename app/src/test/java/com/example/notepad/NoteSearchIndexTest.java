@@ -0,0 +1,146 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NoteSearchIndexTest {
+
+    @Test
+    public void searchIntersectsTermsAndMatchesPrefixes() {
+        NoteSearchIndex index = index(
+                note(1, "Weekly meeting", "agenda and notes"),
+                note(2, "Meetup", "notes from the meetup"),
+                note(3, "Shopping", "milk and eggs"));
+
+        assertArrayEquals(new long[]{1, 2}, index.search("meet"));
+        assertArrayEquals(new long[]{1}, index.search("MEET agenda"));
+        assertArrayEquals(new long[0], index.search("meet milk"));
+        // 没有可检索的词时交给调用方逐条匹配
+        assertNull(index.search("..."));
+    }
+
+    @Test
+    public void cjkQueriesUseBigrams() {
+        NoteSearchIndex index = index(
+                note(1, "工作计划", "下周的会议安排"),
+                note(2, "计算器", "工具"),
+                note(3, "读书", "计划读完三本书"));
+
+        assertArrayEquals(new long[]{1, 3}, index.search("计划"));
+        assertArrayEquals(new long[]{1, 2, 3}, index.search("计"));
+        assertArrayEquals(new long[]{1}, index.search("会议 工作"));
+        // 两个字都出现但不相邻
+        assertArrayEquals(new long[0], index.search("计书"));
+    }
+
+    @Test
+    public void updatesAndRemovalsReplaceOldTerms() {
+        NoteSearchIndex index = new NoteSearchIndex();
+        Note note = note(1, "旧标题", "apple");
+        note.setDate(new Date(1000));
+        index.add(note);
+        assertTrue(index.isCurrent(note));
+
+        note.setContent("banana");
+        assertFalse(index.isCurrent(note));
+        index.add(note);
+        assertArrayEquals(new long[0], index.search("apple"));
+        assertArrayEquals(new long[]{1}, index.search("banana"));
+
+        index.add(note(2, "other", "banana bread"));
+        index.retainAll(Collections.singletonList(2L));
+        assertArrayEquals(new long[]{2}, index.search("banana"));
+        index.remove(2);
+        assertArrayEquals(new long[0], index.search("banana"));
+    }
+
+    @Test
+    public void bm25RanksTitleHitsAndRareTermsHigher() {
+        NoteSearchIndex index = index(
+                note(1, "Budget", "numbers for the quarter"),
+                note(2, "Quarter review", "the budget was discussed once"),
+                note(3, "Notes", "budget budget budget " + filler(200)),
+                note(4, "Misc", "nothing relevant here"));
+
+        Map<Long, Float> scores = index.relevance("budget");
+        assertEquals(3, scores.size());
+        // 标题命中按 TITLE_WEIGHT 倍计数，长正文里重复的词按长度归一化
+        assertTrue(scores.get(1L) > scores.get(2L));
+        assertTrue(scores.get(1L) > scores.get(3L));
+
+        // 只有一篇笔记出现的词比多篇都有的词权重高
+        Map<Long, Float> both = index.relevance("budget review");
+        assertTrue(both.get(2L) > both.get(1L));
+
+        assertTrue(NoteSearchIndex.bm25(2, 1, 10, 10, 100) > NoteSearchIndex.bm25(1, 1, 10, 10, 100));
+        assertTrue(NoteSearchIndex.bm25(1, 1, 10, 10, 100) > NoteSearchIndex.bm25(1, 50, 10, 10, 100));
+    }
+
+    @Test
+    public void fuzzySearchToleratesTyposAndHomophones() {
+        NoteSearchIndex index = index(
+                note(1, "Dentist appointment", "tuesday afternoon"),
+                note(2, "项目会议纪要", "讨论了上线时间"),
+                note(3, "Grocery list", "apples and bread"),
+                note(4, "读书笔记", "第三章"));
+
+        assertEquals(1, index.fuzzySearch(Collections.singletonList("dentsit apointment"))[0]);
+        // 错了一个同音字
+        assertEquals(2, index.fuzzySearch(Collections.singletonList("项目会意纪要"))[0]);
+        // 第一个候选没有匹配时用后面的候选
+        assertEquals(3, index.fuzzySearch(Arrays.asList("zzzz", "grocery"))[0]);
+        assertEquals(0, index.fuzzySearch(Collections.singletonList("完全无关")).length);
+    }
+
+    @Test
+    public void writeAndReadRebuildTheSameIndex() throws IOException {
+        NoteSearchIndex index = index(
+                note(1, "工作计划", "meeting agenda"),
+                note(2, "Meetup", "工作 notes"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        index.write(out);
+
+        InputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertTrue(NoteCodec.hasMagic(in, NoteSearchIndex.MAGIC));
+        NoteSearchIndex copy = NoteSearchIndex.read(in);
+        assertArrayEquals(index.search("工作"), copy.search("工作"));
+        assertArrayEquals(index.search("meet"), copy.search("meet"));
+        assertEquals(index.relevance("meet"), copy.relevance("meet"));
+        assertArrayEquals(index.fuzzySearch(Collections.singletonList("meating")),
+                copy.fuzzySearch(Collections.singletonList("meating")));
+    }
+
+    private static NoteSearchIndex index(Note... notes) {
+        NoteSearchIndex index = new NoteSearchIndex();
+        for (Note note : notes) {
+            index.add(note);
+        }
+        return index;
+    }
+
+    private static Note note(long id, String title, String content) {
+        return new Note(id, title, content);
+    }
+
+    private static String filler(int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(" word").append(i);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.notepad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NoteSegmentTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripThroughIndex() throws IOException {
+        File file = folder.newFile("notes.seg");
+        List<Note> notes = notes(20);
+        NoteSegment.write(file, notes, 7, null);
+
+        NoteSegment segment = NoteSegment.open(file);
+        assertFalse(segment.isRecovered());
+        assertEquals(7, segment.getJournalSeq());
+        assertSameNotes(notes, segment.readAll());
+    }
+
+    @Test
+    public void damagedTrailerFallsBackToScan() throws IOException {
+        File file = folder.newFile("notes.seg");
+        List<Note> notes = notes(20);
+        NoteSegment.write(file, notes, 7, null);
+        // 尾部魔数在最后 4 个字节
+        NoteJournalTest.flip(file, file.length() - 1);
+
+        NoteSegment segment = NoteSegment.open(file);
+        assertTrue(segment.isRecovered());
+        // 扫描不知道快照覆盖到哪个日志
+        assertEquals(0, segment.getJournalSeq());
+        assertSameNotes(notes, segment.readAll());
+    }
+
+    @Test
+    public void scanSkipsDamagedRecord() throws IOException {
+        File file = folder.newFile("notes.seg");
+        NoteSegment.write(file, notes(3), 0, null);
+        // 毁掉第二条记录的魔数，再截掉尾部，只能逐条扫描
+        NoteJournalTest.flip(file, recordOffset(file, 1));
+        NoteJournalTest.truncate(file, file.length() - 32);
+
+        List<Note> salvaged = NoteSegment.open(file).readAll();
+        assertEquals(2, salvaged.size());
+        assertEquals(1000, salvaged.get(0).getId());
+        assertEquals(1002, salvaged.get(1).getId());
+    }
+
+    @Test
+    public void unreadableHeaderIsRejectedButSalvageable() throws IOException {
+        File file = folder.newFile("notes.seg");
+        List<Note> notes = notes(20);
+        NoteSegment.write(file, notes, 7, null);
+        NoteJournalTest.flip(file, 0);
+
+        try {
+            NoteSegment.open(file);
+            fail("damaged header must not open");
+        } catch (IOException expected) {
+            // 由 NoteStorage 隔离后抢救
+        }
+        NoteSegment segment = NoteSegment.salvage(file);
+        assertTrue(segment.isRecovered());
+        assertSameNotes(notes, segment.readAll());
+    }
+
+    @Test
+    public void rewriteKeepsDictionaryAndCopiesPayloadsWithoutDecoding() throws Exception {
+        File first = folder.newFile("first.seg");
+        NoteSegment.write(first, notes(40), 0, null);
+        NoteSegment segment = NoteSegment.open(first);
+        NoteCompression.Dictionary dictionary = segment.getDictionary();
+        assertNotNull(dictionary);
+        assertTrue(dictionary.baseline > 0);
+        List<Note> loaded = segment.readAll();
+
+        File second = folder.newFile("second.seg");
+        NoteSegment.write(second, loaded, 1, dictionary);
+        // 正文没有被解压过
+        Field loadedContent = Note.class.getDeclaredField("loadedContent");
+        loadedContent.setAccessible(true);
+        for (Note note : loaded) {
+            assertNull(loadedContent.get(note));
+        }
+
+        NoteSegment rewritten = NoteSegment.open(second);
+        assertEquals(dictionary.id, rewritten.getDictionary().id);
+        assertEquals(dictionary.baseline, rewritten.getDictionary().baseline);
+        assertSameNotes(notes(40), rewritten.readAll());
+    }
+
+    @Test
+    public void driftedContentRetrainsDictionary() throws IOException {
+        File first = folder.newFile("first.seg");
+        NoteSegment.write(first, notes(40), 0, null);
+        NoteCompression.Dictionary dictionary = NoteSegment.open(first).getDictionary();
+
+        // 基准压缩率好得不可能达到，任何内容都算偏离
+        File second = folder.newFile("second.seg");
+        NoteSegment.write(second, notes(40), 1, dictionary.withBaseline(1));
+        NoteSegment rewritten = NoteSegment.open(second);
+        assertTrue(rewritten.getDictionary().id > dictionary.id);
+        assertSameNotes(notes(40), rewritten.readAll());
+    }
+
+    @Test
+    public void damagedContentIsCopiedUnchangedOnRewrite() throws IOException {
+        File first = folder.newFile("first.seg");
+        NoteSegment.write(first, notes(3), 0, null);
+        // 第二条记录的正文紧跟在记录头和元数据后面，翻转其中一个字节
+        long record = recordOffset(first, 1);
+        byte[] before = Files.readAllBytes(first.toPath());
+        int metaLength = readInt(before, (int) record + 4);
+        NoteJournalTest.flip(first, record + 20 + metaLength + 5);
+
+        NoteSegment segment = NoteSegment.open(first);
+        List<Note> loaded = segment.readAll();
+        assertEquals("", loaded.get(1).getContent());
+
+        File second = folder.newFile("second.seg");
+        NoteSegment.write(second, loaded, 1, segment.getDictionary());
+        List<Note> rewritten = NoteSegment.open(second).readAll();
+        assertEquals(3, rewritten.size());
+        assertEquals(notes(3).get(0).getContent(), rewritten.get(0).getContent());
+        // 损坏的正文没有被当作有效内容（空串）重写：负载和 CRC 原样复制，读取时仍然校验失败
+        assertEquals("", rewritten.get(1).getContent());
+        byte[] damaged = Files.readAllBytes(first.toPath());
+        byte[] copied = Files.readAllBytes(second.toPath());
+        long copiedRecord = recordOffset(second, 1);
+        int contentLength = readInt(damaged, (int) record + 8);
+        assertEquals(contentLength, readInt(copied, (int) copiedRecord + 8));
+        assertEquals(readInt(damaged, (int) record + 16), readInt(copied, (int) copiedRecord + 16));
+        assertArrayEquals(Arrays.copyOfRange(damaged, (int) record + 20 + metaLength, (int) record + 20 + metaLength + contentLength),
+                Arrays.copyOfRange(copied, (int) copiedRecord + 20 + metaLength, (int) copiedRecord + 20 + metaLength + contentLength));
+        assertEquals(notes(3).get(2).getContent(), rewritten.get(2).getContent());
+    }
+
+    // 长正文用段内字典压缩，扫描抢救时仍能解压
+    private static List<Note> notes(int count) {
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder content = new StringBuilder();
+            for (int j = 0; j < 40; j++) {
+                content.append("第").append(i).append("条笔记的第").append(j).append("行正文，内容会被压缩。\n");
+            }
+            notes.add(new Note(1000 + i, "标题" + i, content.toString()));
+        }
+        return notes;
+    }
+
+    private static void assertSameNotes(List<Note> expected, List<Note> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getContent(), actual.get(i).getContent());
+        }
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    // 按记录魔数 "NREC" 找第 n 条记录的偏移
+    private static long recordOffset(File file, int n) throws IOException {
+        byte[] data = Files.readAllBytes(file.toPath());
+        int found = 0;
+        for (int i = 0; i + 4 <= data.length; i++) {
+            if (data[i] == 'N' && data[i + 1] == 'R' && data[i + 2] == 'E' && data[i + 3] == 'C' && found++ == n) {
+                return i;
+            }
+        }
+        throw new IOException("record " + n + " not found");
+    }
+}
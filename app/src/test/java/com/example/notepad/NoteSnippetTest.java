@@ -0,0 +1,77 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// SpannableString 在单元测试中没有实现，这里检查 excerpt 给出的文字和高亮范围
+public class NoteSnippetTest {
+
+    @Test
+    public void excerptPrefersTheWindowWithMostDistinctTerms() {
+        String content = "budget " + repeat('x', 200) + " meeting about the budget and the plan " + repeat('y', 200);
+        NoteSnippet.Excerpt excerpt = NoteSnippet.excerpt(content, Arrays.asList("budget", "plan"));
+
+        assertTrue(excerpt.text.startsWith("…"));
+        assertTrue(excerpt.text.endsWith("…"));
+        assertTrue(excerpt.text.contains("the budget and the plan"));
+        assertEquals(2, excerpt.highlights.size());
+        assertHighlight(excerpt, 0, "budget");
+        assertHighlight(excerpt, 1, "plan");
+    }
+
+    @Test
+    public void windowOnlyCountsHitsThatFitInTheExcerpt() {
+        // 前一组两个词相距太远，从第一个词之前 CONTEXT 个字符开始的摘录放不下第二个词
+        String content = repeat('x', 50) + "alpha" + repeat('y', 85) + "omega" + repeat('z', 300)
+                + "alpha and omega" + repeat('w', 200);
+        NoteSnippet.Excerpt excerpt = NoteSnippet.excerpt(content, Arrays.asList("alpha", "omega"));
+
+        assertTrue(excerpt.text.contains("alpha and omega"));
+        assertEquals(2, excerpt.highlights.size());
+        assertHighlight(excerpt, 0, "alpha");
+        assertHighlight(excerpt, 1, "omega");
+    }
+
+    @Test
+    public void excerptStartsAtTheBeginningForEarlyHitsAndIgnoresCase() {
+        NoteSnippet.Excerpt excerpt = NoteSnippet.excerpt("Release 计划\n下周 release", Collections.singletonList("release"));
+        // 换行换成空格，长度不变
+        assertEquals("Release 计划 下周 release", excerpt.text);
+        assertArrayEquals(new int[]{0, 7}, excerpt.highlights.get(0));
+        assertArrayEquals(new int[]{14, 21}, excerpt.highlights.get(1));
+    }
+
+    @Test
+    public void excerptIsTruncatedToLength() {
+        String content = repeat('a', 50) + "目标" + repeat('b', 300);
+        NoteSnippet.Excerpt excerpt = NoteSnippet.excerpt(content, Collections.singletonList("目标"));
+        // 前后各加一个省略号
+        assertEquals(NoteSnippet.LENGTH + 2, excerpt.text.length());
+        assertHighlight(excerpt, 0, "目标");
+    }
+
+    @Test
+    public void noExcerptWithoutHits() {
+        assertNull(NoteSnippet.excerpt("nothing here", Collections.singletonList("budget")));
+        assertNull(NoteSnippet.excerpt("", Collections.singletonList("budget")));
+        assertNull(NoteSnippet.excerpt(null, Collections.singletonList("budget")));
+    }
+
+    private static void assertHighlight(NoteSnippet.Excerpt excerpt, int index, String term) {
+        int[] range = excerpt.highlights.get(index);
+        assertEquals(term, excerpt.text.substring(range[0], range[1]).toLowerCase());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
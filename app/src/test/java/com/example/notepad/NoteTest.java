@@ -0,0 +1,69 @@
+package com.example.notepad;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NoteTest {
+
+    @Test
+    public void lazyContentIsDecodedOnce() {
+        final int[] loads = {0};
+        Note note = new Note(1, "标题", null);
+        note.setContentLoader(() -> {
+            loads[0]++;
+            return "正文";
+        });
+
+        String first = note.getContent();
+        assertEquals("正文", first);
+        assertSame(first, note.getContent());
+        assertEquals(1, loads[0]);
+    }
+
+    @Test
+    public void setContentReplacesLoadedContent() {
+        Note note = new Note(1, "标题", null);
+        note.setContentLoader(() -> "旧正文");
+        note.getContent();
+
+        note.setContent("新正文");
+        assertEquals("新正文", note.getContent());
+    }
+
+    @Test
+    public void serializationWritesLazyContentWithoutMaterializingIt() throws Exception {
+        Note note = new Note(42, "标题", null);
+        note.setCategory("工作");
+        note.setContentLoader(() -> "很长的正文");
+
+        Note copy = roundTrip(note);
+        assertEquals(42, copy.getId());
+        assertEquals("标题", copy.getTitle());
+        assertEquals("工作", copy.getCategory());
+        assertEquals("很长的正文", copy.getContent());
+        assertEquals(note.getDate(), copy.getDate());
+
+        // 序列化不把正文写回原笔记的 content 字段
+        Field content = Note.class.getDeclaredField("content");
+        content.setAccessible(true);
+        assertNull(content.get(note));
+    }
+
+    private static Note roundTrip(Note note) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(note);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return (Note) in.readObject();
+    }
+}